@@ -0,0 +1,29 @@
+package com.stretcher;
+
+import android.os.Handler;
+
+import com.stretcher.session.IScheduler;
+
+/**
+ * Scheduler posting tasks to a handler, expects times from {@link UptimeClock}
+ */
+public class HandlerScheduler implements IScheduler {
+    /**
+     * Handler tasks are posted to
+     */
+    private final Handler mHandler;
+
+    public HandlerScheduler(Handler handler) {
+        mHandler = handler;
+    }
+
+    @Override
+    public void schedule(Runnable task, long atMs) {
+        mHandler.postAtTime(task, atMs);
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+        mHandler.removeCallbacks(task);
+    }
+}
@@ -1,41 +1,32 @@
 package com.stretcher;
 
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.core.app.NotificationCompat;
-import androidx.core.app.NotificationManagerCompat;
-
-import android.app.Notification;
-import android.app.NotificationChannel;
-import android.app.NotificationManager;
-import android.content.Context;
-import android.os.VibrationEffect;
-import android.os.Vibrator;
-import android.annotation.SuppressLint;
-import android.media.AudioManager;
-import android.media.ToneGenerator;
+
+import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.os.Handler;
+import android.provider.Settings;
 import android.speech.tts.TextToSpeech;
 import android.util.Log;
 import android.view.View;
 import android.view.Window;
 import android.view.WindowManager;
-import android.widget.ImageButton;
-import android.widget.ImageView;
-import android.widget.ProgressBar;
-import android.widget.TextView;
 import android.widget.Toast;
 
-import com.stretcher.steps.ActionStep;
-import com.stretcher.steps.FinishedStep;
+import com.stretcher.session.PowerPolicy;
+import com.stretcher.session.SessionEngine;
+import com.stretcher.session.SessionTrace;
+import com.stretcher.session.SessionTraceRecorder;
 import com.stretcher.steps.IStep;
-import com.stretcher.steps.StartedStep;
 import com.stretcher.steps.StepGenerator;
-import com.stretcher.steps.SwitchExerciseStep;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
-import java.util.Random;
 
 public class MainActivity extends AppCompatActivity {
     /**
@@ -44,9 +35,29 @@ public class MainActivity extends AppCompatActivity {
     private static final String kTAG = MainActivity.class.getCanonicalName();
 
     /**
-     * Time elapsed between some work
+     * Preferences file name
+     */
+    private static final String kPREFERENCES = "stretcher";
+
+    /**
+     * Preference enabling session trace recording (off by default)
+     */
+    private static final String kPREF_RECORD_TRACES = "record_traces";
+
+    /**
+     * Directory (relative to the files directory) session traces are saved to
+     */
+    private static final String kTRACE_DIR = "traces";
+
+    /**
+     * How many session traces to keep
      */
-    private static final long kUPDATE_PERIOD_MS = 50;
+    private static final int kMAX_TRACES = 10;
+
+    /**
+     * Maximum value of the system screen brightness setting
+     */
+    private static final int kMAX_SYSTEM_BRIGHTNESS = 255;
 
     /**
      * Action handler
@@ -59,34 +70,39 @@ public class MainActivity extends AppCompatActivity {
     private TextToSpeech mTts;
 
     /**
-     * Used to play warning beeps
+     * Session audio & haptic output
      */
-    private ToneGenerator mToneGen = new ToneGenerator(AudioManager.STREAM_MUSIC, 100);
+    private SessionFeedback mFeedback;
 
     /**
-     * Steps to be executed
+     * Executes the exercise steps
      */
-    List<IStep> mSteps;
+    private SessionEngine mEngine;
 
     /**
-     * Currently executing steps
+     * Session visual output
      */
-    IStep mCurrentStep = null;
+    private SessionViewBinder mViewBinder;
 
     /**
-     * Number of total steps
+     * Records the session if enabled (null if not recording)
      */
-    int mTotalSteps;
+    private SessionTraceRecorder mTrace;
 
     /**
-     * Current exercise step
+     * File the session trace is saved to (null until first saved)
      */
-    SwitchExerciseStep mCurrentExercise;
+    private File mTraceFile;
 
     /**
-     * Current exercise action step
+     * Decides how much work the session may do
      */
-    ActionStep mCurrentAction;
+    private final PowerPolicy mPowerPolicy = new PowerPolicy();
+
+    /**
+     * Feeds the power policy
+     */
+    private PowerMonitor mPowerMonitor;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -100,8 +116,7 @@ public class MainActivity extends AppCompatActivity {
 
         mHandler = new Handler(getMainLooper());
 
-        mSteps = StepGenerator.generateSteps(Exercise.load());
-        mTotalSteps = mSteps.size();
+        mPowerMonitor = new PowerMonitor(this, mPowerPolicy);
 
         getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
 
@@ -128,37 +143,51 @@ public class MainActivity extends AppCompatActivity {
     private void start() {
         setContentView(R.layout.activity_main);
 
-        findViewById(R.id.buttonPlayPause).setOnClickListener(view -> MainActivity.this.togglePlayPause());
-        findViewById(R.id.btnSkip).setOnClickListener(view -> MainActivity.this.skipAction());
+        mFeedback = new SessionFeedback(this, mTts);
+        mViewBinder = new SessionViewBinder(this::findViewById);
 
-        // Hide the status bar
-        getWindow().getDecorView().setSystemUiVisibility(View.SYSTEM_UI_FLAG_FULLSCREEN);
-        getSupportActionBar().hide();
+        List<IStep> steps = StepGenerator.generateSteps(Exercise.load());
 
-        // Load up initial exercise
-        doWork();
+        mEngine = new SessionEngine(
+                steps,
+                new UptimeClock(),
+                new HandlerScheduler(mHandler),
+                mViewBinder,
+                mFeedback);
 
-        Runnable runnable = new Runnable() {
-            @Override
-            public void run() {
-                if (!doWork()) {
-                    return;
-                }
+        if (getPreferences().getBoolean(kPREF_RECORD_TRACES, false)) {
+            mTrace = new SessionTraceRecorder(SessionTrace.planId(steps));
+            mEngine.setTraceRecorder(mTrace);
+        }
 
-                mHandler.postDelayed(this, kUPDATE_PERIOD_MS);
-            }
-        };
+        // Dim the screen under power pressure
+        mPowerPolicy.addListener(level -> applyScreenBrightness());
+        mPowerMonitor.start();
+        applyScreenBrightness();
+
+        mEngine.setPowerPolicy(mPowerPolicy);
+
+        findViewById(R.id.buttonPlayPause).setOnClickListener(view -> mEngine.togglePause());
+        findViewById(R.id.buttonPlayPause).setOnLongClickListener(view -> {
+            toggleTraceRecording();
+            return true;
+        });
+        findViewById(R.id.btnSkip).setOnClickListener(view -> mEngine.skipAction());
+
+        // Hide the status bar
+        getWindow().getDecorView().setSystemUiVisibility(View.SYSTEM_UI_FLAG_FULLSCREEN);
+        getSupportActionBar().hide();
 
         // Start working
-        mHandler.post(runnable);
+        mEngine.start();
     }
 
     @Override
     public void onPause() {
         super.onPause();
 
-        if (mCurrentAction != null) {
-            mCurrentAction.togglePause(true);
+        if (mEngine != null) {
+            mEngine.setPaused(true);
         }
     }
 
@@ -166,8 +195,18 @@ public class MainActivity extends AppCompatActivity {
     public void onResume() {
         super.onResume();
 
-        if (mCurrentAction != null) {
-            mCurrentAction.togglePause(false);
+        if (mEngine != null) {
+            mEngine.setPaused(false);
+        }
+    }
+
+    @Override
+    public void onStop() {
+        super.onStop();
+
+        // The process may be killed any time from now on, without onDestroy
+        if (mTrace != null) {
+            saveTrace();
         }
     }
 
@@ -175,10 +214,25 @@ public class MainActivity extends AppCompatActivity {
     public void onDestroy() {
         super.onDestroy();
 
+        if (mEngine != null) {
+            mEngine.stop();
+        }
+
+        mPowerMonitor.stop();
+
+        if (mTrace != null) {
+            saveTrace();
+        }
+
+        if (mViewBinder != null) {
+            mViewBinder.release();
+        }
 
         mHandler.removeCallbacksAndMessages(null);
 
-        if (mTts != null) {
+        if (mFeedback != null) {
+            mFeedback.release();
+        } else if (mTts != null) {
             mTts.stop();
             mTts.shutdown();
         }
@@ -186,128 +240,88 @@ public class MainActivity extends AppCompatActivity {
         finish();
     }
 
-    private void togglePlayPause() {
-        if (mCurrentAction == null) {
-            return;
-        }
-
-        mCurrentAction.togglePause(!mCurrentAction.paused);
+    /**
+     * Override the screen brightness as the power policy requires
+     */
+    private void applyScreenBrightness() {
+        float brightness = mPowerPolicy.getScreenBrightness(getSystemBrightness());
 
-        ((ImageButton) findViewById(R.id.buttonPlayPause)).setImageResource(
-                mCurrentAction.paused ? android.R.drawable.ic_media_play : android.R.drawable.ic_media_pause
-        );
+        WindowManager.LayoutParams attributes = getWindow().getAttributes();
+        attributes.screenBrightness = brightness == PowerPolicy.kDEFAULT_BRIGHTNESS
+                ? WindowManager.LayoutParams.BRIGHTNESS_OVERRIDE_NONE : brightness;
+        getWindow().setAttributes(attributes);
     }
 
-    @SuppressLint("DefaultLocale")
-    private static String formatElapsedTime(long durationMs) {
-        long milliseconds = durationMs % 1000;
-        long seconds = (durationMs / 1000) % 60;
-        long minutes = (durationMs / 1000) / 60;
-
-        return String.format("%02d:%02d.%03d",
-                minutes, seconds, milliseconds);
+    /**
+     * Screen brightness (0-1) the user set, or {@link PowerPolicy#kDEFAULT_BRIGHTNESS} if not known
+     */
+    private float getSystemBrightness() {
+        try {
+            return (float) Settings.System.getInt(getContentResolver(), Settings.System.SCREEN_BRIGHTNESS)
+                    / kMAX_SYSTEM_BRIGHTNESS;
+        } catch (Settings.SettingNotFoundException e) {
+            return PowerPolicy.kDEFAULT_BRIGHTNESS;
+        }
     }
 
-    private void skipAction() {
-        if (mCurrentAction != null) {
+    private SharedPreferences getPreferences() {
+        return getSharedPreferences(kPREFERENCES, MODE_PRIVATE);
+    }
 
-            mTts.stop();
+    /**
+     * Turn session trace recording on or off, starting with the next session
+     * <p>
+     * Off by default; turned on to reproduce issues seen in the field (see README).
+     */
+    private void toggleTraceRecording() {
+        boolean record = !getPreferences().getBoolean(kPREF_RECORD_TRACES, false);
 
-            mCurrentAction.togglePause(false);
+        getPreferences().edit().putBoolean(kPREF_RECORD_TRACES, record).apply();
 
-            mCurrentStep = null;
-            mCurrentAction = null;
-        }
+        Toast.makeText(this, record ? "Recording sessions, starting with the next one" : "Not recording sessions",
+                Toast.LENGTH_SHORT).show();
     }
 
-    private boolean doWork() {
-        while (mCurrentStep == null) {
-            ((ProgressBar) findViewById(R.id.totalProgressBar)).setProgress(
-                    (int) ((1.0 - ((double) mSteps.size() / (double) mTotalSteps)) * 100)
-            );
-
-            mCurrentStep = mSteps.remove(0);
-
-            Log.d(kTAG, "Run step: " + mCurrentStep);
-
-            // Finished
-            if (mCurrentStep instanceof FinishedStep) {
-                // All done
-                speak("All exercises finished");
-                ((TextView) findViewById(R.id.timer)).setText("Done");
-                return false;
-            } else if (mCurrentStep instanceof SwitchExerciseStep) {
-                // New exercise
-                mCurrentExercise = ((SwitchExerciseStep) mCurrentStep);
-
-                TextView textView = findViewById(R.id.description);
-                textView.setText(mCurrentExercise.exercise.fullDescription);
-
-                ImageView imageView = findViewById(R.id.image);
-                imageView.setImageResource(mCurrentExercise.exercise.drawable);
-
-                speak(mCurrentExercise.exercise.name + ". " + mCurrentExercise.exercise.briefDescription);
-                mCurrentStep = null;
-            } else if (mCurrentStep instanceof ActionStep) {
-                ((ProgressBar) findViewById(R.id.currentProgressBar)).setProgress(
-                        (int) (((double) mCurrentExercise.numActionsDone / mCurrentExercise.numActions) * 100)
-                );
-
-                mCurrentExercise.numActionsDone++;
-                mCurrentAction = (ActionStep) mCurrentStep;
-                mCurrentAction.resetTime();
-
-                speak(mCurrentAction.text);
-                break;
-            } else if (mCurrentStep instanceof StartedStep) {
-                mCurrentStep = null;
-            }
+    /**
+     * Save what was recorded of the session so far, dropping the oldest traces
+     * <p>
+     * Saved again to the same file each time, until the session is done. Saved to app specific
+     * external storage if available, which can be pulled over adb from release builds as well.
+     */
+    private void saveTrace() {
+        File dir = getExternalFilesDir(kTRACE_DIR);
+        if (dir == null) {
+            dir = new File(getFilesDir(), kTRACE_DIR);
         }
 
-        // Give off warning that state is about to expire
-        if (mCurrentAction.numWarningBeeps > 0 && mCurrentAction.getRemainingMs() <= (mCurrentAction.numWarningBeeps * 1000)) {
-            mCurrentAction.numWarningBeeps -= 1;
-
-            boolean lastWarning = mCurrentAction.numWarningBeeps == 0;
-
-            // Warning duration
-            int durationMs = lastWarning ? 700 : 150;
-
-            // Play a sound
-            mToneGen.startTone(
-                    lastWarning ? ToneGenerator.TONE_DTMF_A : ToneGenerator.TONE_CDMA_PIP,
-                    durationMs);
-
-            // Vibrate
-            Vibrator vibrator = (Vibrator) getSystemService(Context.VIBRATOR_SERVICE);
-            vibrator.vibrate(VibrationEffect.createOneShot(durationMs,
-                    lastWarning ? VibrationEffect.DEFAULT_AMPLITUDE : VibrationEffect.DEFAULT_AMPLITUDE
-            ));
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.e(kTAG, "Unable to create " + dir);
+            return;
         }
-        String elapsedTimeStr = formatElapsedTime(mCurrentAction.getRemainingMs());
 
-        if (mCurrentAction.isCompleted()) {
-            mCurrentStep = null;
-            mCurrentAction = null;
-            return true;
+        if (mTraceFile == null) {
+            mTraceFile = new File(dir, "session-" + System.currentTimeMillis() + ".trace");
         }
 
-        ((TextView) findViewById(R.id.timer)).setText(elapsedTimeStr + "\n" + mCurrentAction.text);
+        try (OutputStream output = new FileOutputStream(mTraceFile)) {
+            mTrace.writeTo(output);
+        } catch (IOException e) {
+            Log.e(kTAG, "Unable to save session trace", e);
+            return;
+        }
 
-        return true;
-    }
+        Log.d(kTAG, "Session trace saved to " + mTraceFile);
 
+        File[] traces = dir.listFiles();
+        if (traces != null && traces.length > kMAX_TRACES) {
+            // Names sort by time
+            Arrays.sort(traces);
 
-    /**
-     * Speak some text if TTS is available
-     *
-     * @param string Text to speak
-     */
-    private void speak(String string) {
-        Log.d(kTAG, string);
-
-        if (mTts != null) {
-            mTts.speak(string, TextToSpeech.QUEUE_ADD, null);
+            for (int i = 0; i < traces.length - kMAX_TRACES; i++) {
+                if (!traces[i].delete()) {
+                    Log.w(kTAG, "Unable to delete " + traces[i]);
+                }
+            }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,125 @@
+package com.stretcher;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+
+import com.stretcher.session.PowerPolicy;
+
+/**
+ * Feeds battery saver, battery level and thermal status of the device into a {@link PowerPolicy}
+ * <p>
+ * Thermal status is only available on Android 10 and newer.
+ */
+public class PowerMonitor {
+    /**
+     * Used to register receivers
+     */
+    private final Context mContext;
+
+    /**
+     * Power state source
+     */
+    private final PowerManager mPowerManager;
+
+    /**
+     * Policy being fed
+     */
+    private final PowerPolicy mPolicy;
+
+    /**
+     * Battery & battery saver changes
+     */
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (Intent.ACTION_BATTERY_CHANGED.equals(intent.getAction())) {
+                updateBattery(intent);
+            } else {
+                mPolicy.setPowerSaveMode(mPowerManager.isPowerSaveMode());
+            }
+        }
+    };
+
+    /**
+     * Thermal status changes (null if not supported or not started)
+     */
+    private PowerManager.OnThermalStatusChangedListener mThermalListener = null;
+
+    /**
+     * Indication if the monitor is started
+     */
+    private boolean mStarted = false;
+
+    public PowerMonitor(Context context, PowerPolicy policy) {
+        mContext = context;
+        mPowerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        mPolicy = policy;
+    }
+
+    /**
+     * Start monitoring, updating the policy with the current state right away
+     */
+    public void start() {
+        if (mStarted) {
+            return;
+        }
+
+        mStarted = true;
+
+        IntentFilter filter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+        filter.addAction(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED);
+
+        // Battery status is sticky, so the current one is returned
+        Intent battery = mContext.registerReceiver(mReceiver, filter);
+        if (battery != null) {
+            updateBattery(battery);
+        }
+
+        mPolicy.setPowerSaveMode(mPowerManager.isPowerSaveMode());
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            mThermalListener = mPolicy::setThermalStatus;
+
+            mPowerManager.addThermalStatusListener(mContext.getMainExecutor(), mThermalListener);
+            mPolicy.setThermalStatus(mPowerManager.getCurrentThermalStatus());
+        }
+    }
+
+    /**
+     * Stop monitoring
+     */
+    public void stop() {
+        if (!mStarted) {
+            return;
+        }
+
+        mStarted = false;
+
+        mContext.unregisterReceiver(mReceiver);
+
+        if (mThermalListener != null) {
+            mPowerManager.removeThermalStatusListener(mThermalListener);
+            mThermalListener = null;
+        }
+    }
+
+    private void updateBattery(Intent intent) {
+        int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        int status = intent.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+
+        if (level < 0 || scale <= 0) {
+            return;
+        }
+
+        boolean charging = status == BatteryManager.BATTERY_STATUS_CHARGING
+                || status == BatteryManager.BATTERY_STATUS_FULL;
+
+        mPolicy.setBattery(level * 100 / scale, charging);
+    }
+}
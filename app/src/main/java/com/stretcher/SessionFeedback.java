@@ -0,0 +1,86 @@
+package com.stretcher;
+
+import android.content.Context;
+import android.media.AudioManager;
+import android.media.ToneGenerator;
+import android.os.VibrationEffect;
+import android.os.Vibrator;
+import android.speech.tts.TextToSpeech;
+import android.util.Log;
+
+import com.stretcher.session.ISessionFeedback;
+
+/**
+ * Session feedback using text to speech, tones and vibration
+ */
+public class SessionFeedback implements ISessionFeedback {
+    /**
+     * Log tag
+     */
+    private static final String kTAG = SessionFeedback.class.getCanonicalName();
+
+    /**
+     * Use to notify the user about current action (null if not available)
+     */
+    private final TextToSpeech mTts;
+
+    /**
+     * Used to play warning beeps
+     */
+    private final ToneGenerator mToneGen = new ToneGenerator(AudioManager.STREAM_MUSIC, 100);
+
+    /**
+     * Used to vibrate along with the beeps
+     */
+    private final Vibrator mVibrator;
+
+    public SessionFeedback(Context context, TextToSpeech tts) {
+        mTts = tts;
+        mVibrator = (Vibrator) context.getSystemService(Context.VIBRATOR_SERVICE);
+    }
+
+    /**
+     * Speak some text if TTS is available
+     *
+     * @param text Text to speak
+     */
+    @Override
+    public void speak(String text) {
+        Log.d(kTAG, text);
+
+        if (mTts != null) {
+            mTts.speak(text, TextToSpeech.QUEUE_ADD, null);
+        }
+    }
+
+    @Override
+    public void stopSpeaking() {
+        if (mTts != null) {
+            mTts.stop();
+        }
+    }
+
+    @Override
+    public void beep(boolean last, int durationMs) {
+        mToneGen.startTone(
+                last ? ToneGenerator.TONE_DTMF_A : ToneGenerator.TONE_CDMA_PIP,
+                durationMs);
+    }
+
+    @Override
+    public void vibrate(int durationMs) {
+        mVibrator.vibrate(VibrationEffect.createOneShot(durationMs, VibrationEffect.DEFAULT_AMPLITUDE));
+    }
+
+    /**
+     * Release all resources
+     */
+    public void release() {
+        if (mTts != null) {
+            mTts.stop();
+            mTts.shutdown();
+        }
+
+        mToneGen.release();
+    }
+}
@@ -0,0 +1,379 @@
+package com.stretcher;
+
+import android.content.res.Resources;
+import android.graphics.BitmapFactory;
+import android.graphics.drawable.AnimatedVectorDrawable;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.provider.Settings;
+import android.view.View;
+import android.view.accessibility.AccessibilityNodeInfo;
+import android.widget.ImageButton;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import com.stretcher.session.ISessionView;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Binds the session to the views of activity_main
+ * <p>
+ * Views are looked up once, and the countdown text is built in a reused buffer. Exercise images
+ * are decoded ahead of time on a background thread. Progress bars are set once per step, and
+ * animated within the step by the render thread unless the power policy turns animations off.
+ */
+public class SessionViewBinder implements ISessionView {
+    /**
+     * Used to look up views by ID
+     */
+    public interface IViewFinder {
+        View find(int id);
+    }
+
+    /**
+     * Countdown & action description
+     */
+    private final TextView mTimer;
+
+    /**
+     * Exercise description
+     */
+    private final TextView mDescription;
+
+    /**
+     * Exercise image
+     */
+    private final ImageView mImage;
+
+    /**
+     * Session progress
+     */
+    private final ProgressView mTotalProgress;
+
+    /**
+     * Exercise progress
+     */
+    private final ProgressView mExerciseProgress;
+
+    /**
+     * Play/pause button
+     */
+    private final ImageButton mPlayPause;
+
+    /**
+     * Buffer the countdown text is built in
+     */
+    private final StringBuilder mTimerText = new StringBuilder();
+
+    /**
+     * Decodes exercise images
+     */
+    private final ExecutorService mDecoder = Executors.newSingleThreadExecutor();
+
+    /**
+     * Exercise images being decoded, by drawable ID
+     */
+    private final Map<Integer, Future<Drawable>> mPrepared = new HashMap<>();
+
+    public SessionViewBinder(IViewFinder finder) {
+        mTimer = (TextView) finder.find(R.id.timer);
+        mDescription = (TextView) finder.find(R.id.description);
+        mImage = (ImageView) finder.find(R.id.image);
+        mPlayPause = (ImageButton) finder.find(R.id.buttonPlayPause);
+
+        // Animation durations are scaled by the developer setting, but progress has to stay in time
+        float durationScale = Settings.Global.getFloat(mTimer.getContext().getContentResolver(),
+                Settings.Global.ANIMATOR_DURATION_SCALE, 1.0f);
+
+        mTotalProgress = new ProgressView(finder.find(R.id.totalProgress), finder.find(R.id.totalProgressFill),
+                finder.find(R.id.totalProgressRun), R.string.session_progress, durationScale);
+        mExerciseProgress = new ProgressView(finder.find(R.id.exerciseProgress),
+                finder.find(R.id.exerciseProgressFill), finder.find(R.id.exerciseProgressRun),
+                R.string.exercise_progress, durationScale);
+    }
+
+    @Override
+    public void prepareExercise(Exercise exercise) {
+        final int drawable = exercise.drawable;
+
+        mPrepared.put(drawable, mDecoder.submit(() -> decode(drawable)));
+    }
+
+    @Override
+    public void showExercise(Exercise exercise) {
+        mDescription.setText(exercise.fullDescription);
+
+        Future<Drawable> prepared = mPrepared.remove(exercise.drawable);
+        Drawable drawable = null;
+
+        if (prepared != null && prepared.isDone()) {
+            try {
+                drawable = prepared.get();
+            } catch (ExecutionException | InterruptedException e) {
+                // Decoded below
+            }
+        } else if (prepared != null) {
+            // Not decoded in time, the result would never be used
+            prepared.cancel(false);
+        }
+
+        if (drawable == null) {
+            drawable = decode(exercise.drawable);
+        }
+
+        mImage.setImageDrawable(drawable);
+    }
+
+    @Override
+    public void showCountdown(long remainingMs, long granularityMs, String text) {
+        mTimerText.setLength(0);
+
+        if (granularityMs >= 1000) {
+            // Round up, so the countdown shows 00:00 only once the action is done
+            appendSeconds(mTimerText, (remainingMs + 999) / 1000);
+        } else {
+            appendElapsedTime(mTimerText, remainingMs);
+        }
+
+        mTimerText.append('\n').append(text);
+
+        mTimer.setText(mTimerText);
+    }
+
+    @Override
+    public void animateTotalProgress(float from, float to, long durationMs, long elapsedMs) {
+        mTotalProgress.animate(from, to, durationMs, elapsedMs);
+    }
+
+    @Override
+    public void animateExerciseProgress(float from, float to, long durationMs, long elapsedMs) {
+        mExerciseProgress.animate(from, to, durationMs, elapsedMs);
+    }
+
+    @Override
+    public void pauseProgress(long elapsedMs) {
+        mTotalProgress.pause(elapsedMs);
+        mExerciseProgress.pause(elapsedMs);
+    }
+
+    @Override
+    public void resumeProgress(long elapsedMs) {
+        mTotalProgress.resume(elapsedMs);
+        mExerciseProgress.resume(elapsedMs);
+    }
+
+    @Override
+    public void showPaused(boolean paused) {
+        mPlayPause.setImageResource(
+                paused ? android.R.drawable.ic_media_play : android.R.drawable.ic_media_pause
+        );
+    }
+
+    @Override
+    public void showFinished() {
+        mTimer.setText("Done");
+    }
+
+    /**
+     * Release all resources
+     */
+    public void release() {
+        mDecoder.shutdownNow();
+        mPrepared.clear();
+
+        mTotalProgress.cancel();
+        mExerciseProgress.cancel();
+    }
+
+    /**
+     * Decode an exercise image at the size it was generated at
+     * <p>
+     * Illustrations capped by their source resolution are only generated for the lowest density
+     * they fit (see illustrations.gradle), so higher densities get them from a lower bucket; they
+     * must not be scaled up on decode. The image view scales them when drawing.
+     */
+    private Drawable decode(int drawable) {
+        Resources resources = mImage.getResources();
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inScaled = false;
+
+        return new BitmapDrawable(resources, BitmapFactory.decodeResource(resources, drawable, options));
+    }
+
+    /**
+     * Append duration formatted as mm:ss.mmm
+     */
+    static void appendElapsedTime(StringBuilder builder, long durationMs) {
+        appendSeconds(builder, durationMs / 1000).append('.');
+        appendPadded(builder, durationMs % 1000, 3);
+    }
+
+    /**
+     * Append duration formatted as mm:ss
+     */
+    static StringBuilder appendSeconds(StringBuilder builder, long durationSec) {
+        appendPadded(builder, durationSec / 60, 2).append(':');
+        return appendPadded(builder, durationSec % 60, 2);
+    }
+
+    private static StringBuilder appendPadded(StringBuilder builder, long value, int digits) {
+        for (long limit = 10; digits > 1; digits--, limit *= 10) {
+            if (value < limit) {
+                builder.append('0');
+            }
+        }
+
+        return builder.append(value);
+    }
+
+    /**
+     * Progress bar animated by the render thread
+     * <p>
+     * The bar is a static fill, showing progress at the last step boundary, with a run on top of
+     * it, whose animated vector grows from nothing to the full width of the bar over a fixed
+     * duration (progress_run_duration_ms). When a step starts or resumes, the run is moved to the
+     * current progress & scaled so it reaches the end of the step when the step is done, and its
+     * animation started. Animated vectors run on the render thread, so the main thread doesn't do
+     * anything for the bar until the next step boundary.
+     */
+    private static class ProgressView {
+        /**
+         * Progress bar track, containing the fill & run
+         */
+        private final View mTrack;
+
+        /**
+         * Progress at the last step boundary, full width at scale 1
+         */
+        private final View mFill;
+
+        /**
+         * Progress within the current step
+         */
+        private final View mRun;
+
+        private final AnimatedVectorDrawable mRunAnimation;
+
+        /**
+         * How long the run animation takes to grow over the full width (0 if animators are disabled)
+         */
+        private final long mRunDurationMs;
+
+        /**
+         * Name of the bar for accessibility
+         */
+        private final String mLabel;
+
+        /**
+         * Progress when the current step started
+         */
+        private float mFrom = 0;
+
+        /**
+         * Progress when the current step is done
+         */
+        private float mTo = 0;
+
+        /**
+         * Duration of the current step
+         */
+        private long mDurationMs = 0;
+
+        /**
+         * Progress shown by the fill
+         */
+        private float mValue = 0;
+
+        /**
+         * Progress reported to accessibility services (0-100)
+         */
+        private int mPercent = -1;
+
+        ProgressView(View track, View fill, View run, int label, float durationScale) {
+            mTrack = track;
+            mFill = fill;
+            mRun = run;
+            mLabel = track.getResources().getString(label);
+
+            mFill.setPivotX(0);
+            mRun.setPivotX(0);
+
+            mRunAnimation = (AnimatedVectorDrawable) run.getBackground().mutate();
+
+            mRunDurationMs = (long) (run.getResources().getInteger(R.integer.progress_run_duration_ms) * durationScale);
+
+            // The run starts at the end of the fill, which depends on the width of the bar
+            mTrack.addOnLayoutChangeListener((view, left, top, right, bottom,
+                                              oldLeft, oldTop, oldRight, oldBottom) ->
+                    mRun.setTranslationX(mValue * view.getWidth()));
+
+            // Reported as a progress bar, updated at step boundaries
+            mTrack.setAccessibilityDelegate(new View.AccessibilityDelegate() {
+                @Override
+                public void onInitializeAccessibilityNodeInfo(View host, AccessibilityNodeInfo info) {
+                    super.onInitializeAccessibilityNodeInfo(host, info);
+
+                    info.setClassName(android.widget.ProgressBar.class.getName());
+                    info.setRangeInfo(AccessibilityNodeInfo.RangeInfo.obtain(
+                            AccessibilityNodeInfo.RangeInfo.RANGE_TYPE_PERCENT, 0, 100, Math.max(mPercent, 0)));
+                }
+            });
+        }
+
+        void animate(float from, float to, long durationMs, long elapsedMs) {
+            mFrom = from;
+            mTo = to;
+            mDurationMs = durationMs;
+
+            show(elapsedMs, true);
+        }
+
+        void pause(long elapsedMs) {
+            show(elapsedMs, false);
+        }
+
+        void resume(long elapsedMs) {
+            show(elapsedMs, true);
+        }
+
+        void cancel() {
+            mRunAnimation.reset();
+        }
+
+        /**
+         * Show progress of the current step at the given time, and animate the rest of it
+         */
+        private void show(long elapsedMs, boolean animated) {
+            long remainingMs = mDurationMs - elapsedMs;
+
+            mValue = remainingMs > 0 ? mFrom + (mTo - mFrom) * elapsedMs / mDurationMs : mTo;
+
+            // Back to an empty run
+            mRunAnimation.reset();
+
+            mFill.setScaleX(mValue);
+            mRun.setTranslationX(mValue * mTrack.getWidth());
+
+            if (animated && mValue < mTo && remainingMs <= mRunDurationMs) {
+                // Run animation reaches the end of the step when the step is done (and is cut
+                // short by the next step)
+                mRun.setScaleX((mTo - mValue) * mRunDurationMs / remainingMs);
+                mRunAnimation.start();
+            }
+
+            int percent = (int) (mValue * 100);
+            if (percent != mPercent) {
+                mPercent = percent;
+                mTrack.setContentDescription(
+                        mTrack.getResources().getString(R.string.progress_description, mLabel, percent));
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.stretcher;
+
+import android.os.SystemClock;
+
+import com.stretcher.session.IClock;
+
+/**
+ * Clock based on system uptime (same time base used by {@link android.os.Handler})
+ */
+public class UptimeClock implements IClock {
+    @Override
+    public long nowMs() {
+        return SystemClock.uptimeMillis();
+    }
+}
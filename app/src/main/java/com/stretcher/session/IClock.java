@@ -0,0 +1,11 @@
+package com.stretcher.session;
+
+/**
+ * Monotonic time source used by the session
+ */
+public interface IClock {
+    /**
+     * Current time in milliseconds, only meaningful relative to other readings of the same clock
+     */
+    long nowMs();
+}
@@ -0,0 +1,19 @@
+package com.stretcher.session;
+
+/**
+ * Runs tasks at a given time of the session clock
+ */
+public interface IScheduler {
+    /**
+     * Schedule a task
+     *
+     * @param task Task to run
+     * @param atMs Clock time at which the task should be run
+     */
+    void schedule(Runnable task, long atMs);
+
+    /**
+     * Remove all pending runs of a task
+     */
+    void cancel(Runnable task);
+}
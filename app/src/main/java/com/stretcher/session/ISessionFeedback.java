@@ -0,0 +1,29 @@
+package com.stretcher.session;
+
+/**
+ * Audio & haptic output of a session
+ */
+public interface ISessionFeedback {
+    /**
+     * Queue some text to be spoken
+     */
+    void speak(String text);
+
+    /**
+     * Stop speaking and drop anything queued
+     */
+    void stopSpeaking();
+
+    /**
+     * Play a warning beep
+     *
+     * @param last       Indication if this is the last beep before the action expires
+     * @param durationMs Duration of the beep
+     */
+    void beep(boolean last, int durationMs);
+
+    /**
+     * Vibrate the device
+     */
+    void vibrate(int durationMs);
+}
@@ -0,0 +1,70 @@
+package com.stretcher.session;
+
+import com.stretcher.Exercise;
+
+/**
+ * Visual output of a session
+ */
+public interface ISessionView {
+    /**
+     * Prepare an exercise which is about to be shown (e.g. decode its image)
+     */
+    void prepareExercise(Exercise exercise);
+
+    /**
+     * Show a new exercise (description & image)
+     */
+    void showExercise(Exercise exercise);
+
+    /**
+     * Show the countdown of the current action
+     *
+     * @param remainingMs   Time remaining until the action is done
+     * @param granularityMs How precisely the remaining time should be shown (e.g. 1000 for whole seconds)
+     * @param text          Action description
+     */
+    void showCountdown(long remainingMs, long granularityMs, String text);
+
+    /**
+     * Animate progress of the whole session (0-1) over the duration of a step
+     * <p>
+     * Called once per step; the animation runs on its own until the next step.
+     *
+     * @param from       Progress when the step started
+     * @param to         Progress when the step is done
+     * @param durationMs Duration of the step (0 to show progress right away)
+     * @param elapsedMs  How much of the step already elapsed
+     */
+    void animateTotalProgress(float from, float to, long durationMs, long elapsedMs);
+
+    /**
+     * Animate progress of the current exercise (0-1) over the duration of a step
+     *
+     * @see #animateTotalProgress
+     */
+    void animateExerciseProgress(float from, float to, long durationMs, long elapsedMs);
+
+    /**
+     * Pause progress animations
+     *
+     * @param elapsedMs How much of the step elapsed when the animations were paused
+     */
+    void pauseProgress(long elapsedMs);
+
+    /**
+     * Resume progress animations
+     *
+     * @param elapsedMs How much of the step elapsed before the animations were paused
+     */
+    void resumeProgress(long elapsedMs);
+
+    /**
+     * Show if the session is paused or not
+     */
+    void showPaused(boolean paused);
+
+    /**
+     * All exercises are done
+     */
+    void showFinished();
+}
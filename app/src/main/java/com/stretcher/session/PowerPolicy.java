@@ -0,0 +1,259 @@
+package com.stretcher.session;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides how much work a session may do, based on the power state of the device
+ * <p>
+ * Under pressure (battery saver, low battery, device heating up) the session drops to whole second
+ * countdown granularity, stops animating progress, skips non-essential haptics and dims the
+ * screen (never brightening it). Full fidelity is restored once conditions recover; battery thresholds have some
+ * hysteresis so the level doesn't flap.
+ */
+public class PowerPolicy {
+    /**
+     * Fidelity level
+     */
+    public enum Level {
+        /**
+         * Everything enabled
+         */
+        FULL,
+
+        /**
+         * Whole second countdown, static progress, only essential haptics, dimmed screen
+         */
+        REDUCED,
+
+        /**
+         * Whole second countdown, static progress, only essential haptics, screen dimmed further
+         */
+        MINIMAL
+    }
+
+    /**
+     * Notified when the level changes
+     */
+    public interface IListener {
+        void onLevelChanged(Level level);
+    }
+
+    /**
+     * Thermal status values, as defined by android.os.PowerManager
+     */
+    public static final int kTHERMAL_STATUS_NONE = 0;
+    public static final int kTHERMAL_STATUS_LIGHT = 1;
+    public static final int kTHERMAL_STATUS_MODERATE = 2;
+    public static final int kTHERMAL_STATUS_SEVERE = 3;
+
+    /**
+     * Countdown display granularity at full fidelity
+     */
+    static final long kFULL_REFRESH_PERIOD_MS = 100;
+
+    /**
+     * Countdown display granularity under pressure
+     */
+    static final long kREDUCED_REFRESH_PERIOD_MS = 1000;
+
+    /**
+     * Battery level (when not charging) at or below which fidelity is reduced
+     */
+    static final int kREDUCED_BATTERY_PERCENT = 20;
+
+    /**
+     * Battery level (when not charging) at or below which fidelity is minimal
+     */
+    static final int kMINIMAL_BATTERY_PERCENT = 5;
+
+    /**
+     * How much the battery has to recover above a threshold before leaving a level
+     */
+    static final int kBATTERY_HYSTERESIS_PERCENT = 5;
+
+    /**
+     * Highest screen brightness when reduced (0-1)
+     */
+    static final float kREDUCED_BRIGHTNESS = 0.4f;
+
+    /**
+     * Highest screen brightness when minimal (0-1)
+     */
+    static final float kMINIMAL_BRIGHTNESS = 0.15f;
+
+    /**
+     * Screen brightness meaning "use the system setting"
+     */
+    public static final float kDEFAULT_BRIGHTNESS = -1.0f;
+
+    /**
+     * Indication if battery saver is on
+     */
+    private boolean mPowerSaveMode = false;
+
+    /**
+     * Battery level (0-100)
+     */
+    private int mBatteryPercent = 100;
+
+    /**
+     * Indication if the device is charging
+     */
+    private boolean mCharging = false;
+
+    /**
+     * Indication if the battery is low (has to recover past the threshold to not be low anymore)
+     */
+    private boolean mBatteryLow = false;
+
+    /**
+     * Indication if the battery is critically low (same as above)
+     */
+    private boolean mBatteryCritical = false;
+
+    /**
+     * Thermal status (one of kTHERMAL_STATUS_* or higher)
+     */
+    private int mThermalStatus = kTHERMAL_STATUS_NONE;
+
+    /**
+     * Current level
+     */
+    private Level mLevel = Level.FULL;
+
+    /**
+     * Level change listeners
+     */
+    private final List<IListener> mListeners = new ArrayList<>();
+
+    public void addListener(IListener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(IListener listener) {
+        mListeners.remove(listener);
+    }
+
+    public void setPowerSaveMode(boolean powerSaveMode) {
+        mPowerSaveMode = powerSaveMode;
+
+        evaluate();
+    }
+
+    public void setBattery(int percent, boolean charging) {
+        mBatteryPercent = percent;
+        mCharging = charging;
+
+        mBatteryLow = isBatteryBelow(kREDUCED_BATTERY_PERCENT, mBatteryLow);
+        mBatteryCritical = isBatteryBelow(kMINIMAL_BATTERY_PERCENT, mBatteryCritical);
+
+        evaluate();
+    }
+
+    public void setThermalStatus(int thermalStatus) {
+        mThermalStatus = thermalStatus;
+
+        evaluate();
+    }
+
+    public Level getLevel() {
+        return mLevel;
+    }
+
+    /**
+     * Countdown display granularity
+     */
+    public long getDisplayRefreshPeriodMs() {
+        return mLevel == Level.FULL ? kFULL_REFRESH_PERIOD_MS : kREDUCED_REFRESH_PERIOD_MS;
+    }
+
+    /**
+     * Indication if progress should be animated, rather than only moving at step boundaries
+     * <p>
+     * Animations produce a frame on every display refresh for as long as they run.
+     */
+    public boolean isProgressAnimated() {
+        return mLevel == Level.FULL;
+    }
+
+    /**
+     * Indication if a vibration should be played
+     *
+     * @param essential Indication if the vibration is essential (e.g. marks the end of an action)
+     */
+    public boolean isHapticEnabled(boolean essential) {
+        return mLevel == Level.FULL || essential;
+    }
+
+    /**
+     * Screen brightness override (0-1), or {@link #kDEFAULT_BRIGHTNESS}
+     * <p>
+     * The screen is capped to the level's brightness, but never made brighter than it already is.
+     *
+     * @param systemBrightness Brightness the system currently uses (0-1), or
+     *                         {@link #kDEFAULT_BRIGHTNESS} if not known
+     */
+    public float getScreenBrightness(float systemBrightness) {
+        float maxBrightness;
+
+        switch (mLevel) {
+            case REDUCED:
+                maxBrightness = kREDUCED_BRIGHTNESS;
+                break;
+            case MINIMAL:
+                maxBrightness = kMINIMAL_BRIGHTNESS;
+                break;
+            default:
+                return kDEFAULT_BRIGHTNESS;
+        }
+
+        if (systemBrightness < 0) {
+            // Can't tell if the cap would brighten the screen
+            return kDEFAULT_BRIGHTNESS;
+        }
+
+        return Math.min(systemBrightness, maxBrightness);
+    }
+
+    private void evaluate() {
+        Level level = computeLevel();
+
+        if (level == mLevel) {
+            return;
+        }
+
+        mLevel = level;
+
+        for (IListener listener : new ArrayList<>(mListeners)) {
+            listener.onLevelChanged(level);
+        }
+    }
+
+    private Level computeLevel() {
+        if (mThermalStatus >= kTHERMAL_STATUS_SEVERE || mBatteryCritical) {
+            return Level.MINIMAL;
+        }
+
+        if (mPowerSaveMode || mThermalStatus >= kTHERMAL_STATUS_MODERATE || mBatteryLow) {
+            return Level.REDUCED;
+        }
+
+        return Level.FULL;
+    }
+
+    /**
+     * Check if the battery is running low
+     *
+     * @param thresholdPercent Battery level at or below which it's considered low
+     * @param alreadyLow       Indication if it was already considered low, in which case it has to
+     *                         recover above the threshold before it's not low anymore
+     */
+    private boolean isBatteryBelow(int thresholdPercent, boolean alreadyLow) {
+        if (mCharging) {
+            return false;
+        }
+
+        return mBatteryPercent <= thresholdPercent + (alreadyLow ? kBATTERY_HYSTERESIS_PERCENT : 0);
+    }
+}
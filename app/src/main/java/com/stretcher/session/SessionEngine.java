@@ -0,0 +1,478 @@
+package com.stretcher.session;
+
+import com.stretcher.steps.IStep;
+
+import java.util.List;
+
+/**
+ * Executes a compiled session timeline, driving the view & feedback outputs
+ * <p>
+ * Session time is the clock time minus an offset; pausing and skipping only move the offset. The
+ * engine wakes up for the next timeline event, the next countdown display refresh (on a fixed
+ * grid of remaining time, as coarse as the {@link PowerPolicy} allows) or the next resource to
+ * prepare, whichever comes first. Nothing is scheduled while paused.
+ * <p>
+ * Progress is not refreshed on wakeups: the view animates it, configured once per step and
+ * paused, resumed & seeked along with the session. Under power pressure it's only shown at step
+ * boundaries instead, since animations draw a frame on every display refresh.
+ */
+public class SessionEngine {
+    /**
+     * How far ahead of time resources are prepared
+     */
+    static final long kLOOKAHEAD_MS = 5000;
+
+    /**
+     * Events to be executed
+     */
+    private final SessionTimeline mTimeline;
+
+    /**
+     * Time source
+     */
+    private final IClock mClock;
+
+    /**
+     * Used to schedule wakeups
+     */
+    private final IScheduler mScheduler;
+
+    /**
+     * Visual output
+     */
+    private final ISessionView mView;
+
+    /**
+     * Audio & haptic output
+     */
+    private final ISessionFeedback mFeedback;
+
+    /**
+     * Decides display granularity & which haptics are played
+     */
+    private PowerPolicy mPolicy = new PowerPolicy();
+
+    /**
+     * Reacts to power policy level changes
+     */
+    private final PowerPolicy.IListener mPolicyListener = this::onPowerLevelChanged;
+
+    /**
+     * Single wakeup task, reused for every update
+     */
+    private final Runnable mWakeup = this::onWakeup;
+
+    /**
+     * Time the pending wakeup was scheduled for
+     */
+    private long mWakeupAtMs;
+
+    /**
+     * Records the session (null if not recording)
+     */
+    private SessionTraceRecorder mTrace = null;
+
+    /**
+     * Clock time at which the session time was zero
+     */
+    private long mOffsetMs = 0;
+
+    /**
+     * Indication if the session is paused
+     */
+    private boolean mPaused = false;
+
+    /**
+     * Session time at which the session was paused
+     */
+    private long mPausedAtMs = 0;
+
+    /**
+     * Index of the next event to execute
+     */
+    private int mNextEvent = 0;
+
+    /**
+     * Index of the next exercise to prepare resources for
+     */
+    private int mNextPrepare;
+
+    /**
+     * Currently executing action event
+     */
+    private SessionTimeline.Event mCurrentAction = null;
+
+    /**
+     * Latest session progress event
+     */
+    private SessionTimeline.Event mTotalProgress = null;
+
+    /**
+     * Latest exercise progress event
+     */
+    private SessionTimeline.Event mExerciseProgress = null;
+
+    /**
+     * Indication if progress is shown animated, or only moving at step boundaries
+     */
+    private boolean mProgressAnimated = false;
+
+    /**
+     * Indication if all steps are done
+     */
+    private boolean mFinished = false;
+
+    public SessionEngine(List<IStep> steps, IClock clock, IScheduler scheduler, ISessionView view, ISessionFeedback feedback) {
+        mTimeline = SessionTimeline.compile(steps);
+        mNextPrepare = nextExercise(0);
+        mClock = clock;
+        mScheduler = scheduler;
+        mView = view;
+        mFeedback = feedback;
+    }
+
+    /**
+     * Record inputs, wakeup timings and outputs of the session
+     * <p>
+     * Must be set before the session is started.
+     */
+    public void setTraceRecorder(SessionTraceRecorder trace) {
+        mTrace = trace;
+    }
+
+    /**
+     * Adapt the session to the power state of the device
+     */
+    public void setPowerPolicy(PowerPolicy policy) {
+        mPolicy.removeListener(mPolicyListener);
+
+        mPolicy = policy;
+        mPolicy.addListener(mPolicyListener);
+    }
+
+    /**
+     * Start executing steps
+     */
+    public void start() {
+        mOffsetMs = mClock.nowMs();
+
+        trace(SessionTrace.kSTART, mPolicy.getLevel().ordinal());
+
+        update();
+    }
+
+    /**
+     * Stop the session, no more callbacks will be made
+     */
+    public void stop() {
+        mScheduler.cancel(mWakeup);
+        mPolicy.removeListener(mPolicyListener);
+    }
+
+    public boolean isFinished() {
+        return mFinished;
+    }
+
+    public boolean isPaused() {
+        return mPaused;
+    }
+
+    public void togglePause() {
+        if (mCurrentAction == null) {
+            return;
+        }
+
+        setPaused(!mPaused);
+    }
+
+    public void setPaused(boolean paused) {
+        if (mCurrentAction == null || mPaused == paused) {
+            return;
+        }
+
+        trace(paused ? SessionTrace.kPAUSE : SessionTrace.kRESUME, 0);
+
+        if (paused) {
+            mPausedAtMs = getSessionTimeMs();
+            mPaused = true;
+
+            mView.pauseProgress(mPausedAtMs - mTotalProgress.timeMs);
+        } else {
+            mOffsetMs = mClock.nowMs() - mPausedAtMs;
+            mPaused = false;
+
+            if (mProgressAnimated == mPolicy.isProgressAnimated()) {
+                mView.resumeProgress(mPausedAtMs - mTotalProgress.timeMs);
+            } else {
+                // Power level changed while paused
+                showProgress(mPausedAtMs);
+            }
+        }
+
+        mView.showPaused(paused);
+
+        if (paused) {
+            // Nothing changes until we're resumed
+            mScheduler.cancel(mWakeup);
+        } else {
+            update();
+        }
+    }
+
+    /**
+     * Skip the current action
+     */
+    public void skipAction() {
+        if (mCurrentAction == null) {
+            return;
+        }
+
+        trace(SessionTrace.kSKIP, 0);
+
+        mFeedback.stopSpeaking();
+
+        if (mPaused) {
+            mPaused = false;
+            mView.showPaused(false);
+        }
+
+        // Progress animations of the next step replace the paused ones
+        seek(mCurrentAction.endMs());
+
+        mScheduler.cancel(mWakeup);
+        update();
+    }
+
+    /**
+     * Current session time
+     */
+    private long getSessionTimeMs() {
+        return mPaused ? mPausedAtMs : mClock.nowMs() - mOffsetMs;
+    }
+
+    /**
+     * Move the session time forward
+     * <p>
+     * Events skipped over are dropped, except for the ones which change what's shown.
+     */
+    private void seek(long timeMs) {
+        mOffsetMs = mClock.nowMs() - timeMs;
+
+        while (mNextEvent < mTimeline.size() && mTimeline.get(mNextEvent).timeMs < timeMs) {
+            SessionTimeline.Event event = mTimeline.get(mNextEvent++);
+
+            switch (event.type) {
+                case SessionTimeline.kSHOW_EXERCISE:
+                case SessionTimeline.kTOTAL_PROGRESS:
+                case SessionTimeline.kEXERCISE_PROGRESS:
+                    execute(event, timeMs);
+                    break;
+                case SessionTimeline.kACTION:
+                    mCurrentAction = event;
+                    break;
+            }
+        }
+
+        if (mNextPrepare < mNextEvent) {
+            mNextPrepare = nextExercise(mNextEvent);
+        }
+    }
+
+    private void onPowerLevelChanged(PowerPolicy.Level level) {
+        if (mCurrentAction == null) {
+            // Not started (the level it starts with is part of the start event) or already done
+            return;
+        }
+
+        trace(SessionTrace.kPOWER, level.ordinal());
+
+        if (mPaused) {
+            return;
+        }
+
+        if (mProgressAnimated != mPolicy.isProgressAnimated()) {
+            showProgress(getSessionTimeMs());
+        }
+
+        // Redraw with the new granularity & reschedule on the new grid
+        update();
+    }
+
+    private void onWakeup() {
+        trace(SessionTrace.kWAKEUP, Math.max(0, mClock.nowMs() - mWakeupAtMs));
+
+        update();
+    }
+
+    private void update() {
+        long timeMs = getSessionTimeMs();
+
+        prepare(timeMs);
+
+        while (!mFinished && mNextEvent < mTimeline.size() && mTimeline.get(mNextEvent).timeMs <= timeMs) {
+            execute(mTimeline.get(mNextEvent++), timeMs);
+        }
+
+        if (mFinished) {
+            return;
+        }
+
+        long remainingMs = mCurrentAction.endMs() - timeMs;
+
+        mView.showCountdown(remainingMs, mPolicy.getDisplayRefreshPeriodMs(), mCurrentAction.text);
+
+        scheduleWakeup(timeMs, remainingMs);
+    }
+
+    /**
+     * Prepare exercises shown within the look-ahead window
+     * <p>
+     * Exercises which are already due are shown right away, there's nothing to gain by preparing them.
+     */
+    private void prepare(long timeMs) {
+        while (mNextPrepare < mTimeline.size() && mTimeline.get(mNextPrepare).timeMs <= timeMs + kLOOKAHEAD_MS) {
+            SessionTimeline.Event event = mTimeline.get(mNextPrepare);
+
+            if (event.timeMs > timeMs) {
+                mView.prepareExercise(event.exercise);
+            }
+
+            mNextPrepare = nextExercise(mNextPrepare + 1);
+        }
+    }
+
+    /**
+     * Index of the first exercise event at or after the given index
+     */
+    private int nextExercise(int index) {
+        while (index < mTimeline.size() && mTimeline.get(index).type != SessionTimeline.kSHOW_EXERCISE) {
+            index++;
+        }
+
+        return index;
+    }
+
+    /**
+     * Execute an event
+     *
+     * @param timeMs Current session time (may be past the time of the event)
+     */
+    private void execute(SessionTimeline.Event event, long timeMs) {
+        switch (event.type) {
+            case SessionTimeline.kSHOW_EXERCISE:
+                mView.showExercise(event.exercise);
+                break;
+            case SessionTimeline.kTOTAL_PROGRESS:
+                mTotalProgress = event;
+                showProgress(event, timeMs);
+                break;
+            case SessionTimeline.kEXERCISE_PROGRESS:
+                mExerciseProgress = event;
+                showProgress(event, timeMs);
+                break;
+            case SessionTimeline.kACTION:
+                mCurrentAction = event;
+                trace(SessionTrace.kSTEP, event.value);
+                break;
+            case SessionTimeline.kSPEAK:
+                mFeedback.speak(event.text);
+                break;
+            case SessionTimeline.kBEEP:
+                trace(SessionTrace.kBEEP, event.value);
+                mFeedback.beep(event.value == 1, (int) event.durationMs);
+                break;
+            case SessionTimeline.kVIBRATE:
+                if (mPolicy.isHapticEnabled(event.value == 1)) {
+                    mFeedback.vibrate((int) event.durationMs);
+                }
+                break;
+            case SessionTimeline.kFINISH:
+                mFinished = true;
+                mCurrentAction = null;
+
+                trace(SessionTrace.kFINISH, 0);
+                mView.showFinished();
+                break;
+        }
+    }
+
+    /**
+     * Schedule the next update, for whatever comes first: next event, next resource to prepare,
+     * or remaining time crossing the next display grid line
+     */
+    private void scheduleWakeup(long timeMs, long remainingMs) {
+        long nextMs = Long.MAX_VALUE;
+
+        if (mNextEvent < mTimeline.size()) {
+            nextMs = mTimeline.get(mNextEvent).timeMs;
+        }
+
+        if (mNextPrepare < mTimeline.size()) {
+            nextMs = Math.min(nextMs, mTimeline.get(mNextPrepare).timeMs - kLOOKAHEAD_MS);
+        }
+
+        if (remainingMs > 0) {
+            long periodMs = mPolicy.getDisplayRefreshPeriodMs();
+            long nextRemainingMs = ((remainingMs - 1) / periodMs) * periodMs;
+
+            nextMs = Math.min(nextMs, timeMs + (remainingMs - nextRemainingMs));
+        }
+
+        mScheduler.cancel(mWakeup);
+
+        if (nextMs == Long.MAX_VALUE) {
+            return;
+        }
+
+        mWakeupAtMs = mOffsetMs + Math.max(nextMs, timeMs);
+        mScheduler.schedule(mWakeup, mWakeupAtMs);
+    }
+
+    /**
+     * Show the latest progress again, e.g. after the power level changed
+     */
+    private void showProgress(long timeMs) {
+        if (mTotalProgress != null) {
+            showProgress(mTotalProgress, timeMs);
+        }
+
+        if (mExerciseProgress != null) {
+            showProgress(mExerciseProgress, timeMs);
+        }
+    }
+
+    /**
+     * Show a progress event, animated if the power policy allows it
+     */
+    private void showProgress(SessionTimeline.Event event, long timeMs) {
+        float from = progress(event.value);
+        float to = progress(event.endValue);
+        long durationMs = event.durationMs;
+        long elapsedMs = timeMs - event.timeMs;
+
+        mProgressAnimated = mPolicy.isProgressAnimated();
+
+        if (!mProgressAnimated && durationMs > 0) {
+            // Only moves at step boundaries
+            from = to = from + (to - from) * Math.min(1.0f, (float) elapsedMs / durationMs);
+            durationMs = 0;
+            elapsedMs = 0;
+        }
+
+        if (event.type == SessionTimeline.kTOTAL_PROGRESS) {
+            mView.animateTotalProgress(from, to, durationMs, elapsedMs);
+        } else {
+            mView.animateExerciseProgress(from, to, durationMs, elapsedMs);
+        }
+    }
+
+    private static float progress(int value) {
+        return (float) value / SessionTimeline.kPROGRESS_MAX;
+    }
+
+    private void trace(int type, long arg) {
+        if (mTrace != null) {
+            mTrace.record(type, mClock.nowMs(), arg);
+        }
+    }
+}
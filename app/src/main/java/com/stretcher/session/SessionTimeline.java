@@ -0,0 +1,259 @@
+package com.stretcher.session;
+
+import com.stretcher.Exercise;
+import com.stretcher.steps.ActionStep;
+import com.stretcher.steps.FinishedStep;
+import com.stretcher.steps.IStep;
+import com.stretcher.steps.SwitchExerciseStep;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Steps compiled into a sorted list of timed events, relative to the start of the session
+ * <p>
+ * Session time doesn't include pauses, so the timeline never changes once compiled.
+ */
+public class SessionTimeline {
+    /**
+     * Show a new exercise
+     */
+    public static final int kSHOW_EXERCISE = 1;
+
+    /**
+     * Session progress over the duration of a step, from value to endValue (out of kPROGRESS_MAX)
+     */
+    public static final int kTOTAL_PROGRESS = 2;
+
+    /**
+     * Exercise progress over the duration of a step, from value to endValue (out of kPROGRESS_MAX)
+     */
+    public static final int kEXERCISE_PROGRESS = 3;
+
+    /**
+     * Action started, value is the step index
+     */
+    public static final int kACTION = 4;
+
+    /**
+     * Speak the text
+     */
+    public static final int kSPEAK = 5;
+
+    /**
+     * Warning beep, value is 1 for the last beep of an action
+     */
+    public static final int kBEEP = 6;
+
+    /**
+     * Vibration along with a beep, value is 1 for the last beep of an action
+     */
+    public static final int kVIBRATE = 7;
+
+    /**
+     * All steps done
+     */
+    public static final int kFINISH = 8;
+
+    /**
+     * Progress value of a completed session or exercise
+     */
+    public static final int kPROGRESS_MAX = 10_000;
+
+    /**
+     * Duration of a warning beep
+     */
+    private static final int kWARNING_BEEP_DURATION_MS = 150;
+
+    /**
+     * Duration of the last warning beep
+     */
+    private static final int kFINAL_BEEP_DURATION_MS = 700;
+
+    /**
+     * Timed event
+     */
+    public static class Event {
+        /**
+         * Event type
+         */
+        public final int type;
+
+        /**
+         * Session time of the event
+         */
+        public final long timeMs;
+
+        /**
+         * Duration of the action, beep, vibration or progress animation
+         */
+        public final long durationMs;
+
+        /**
+         * Type specific value
+         */
+        public final int value;
+
+        /**
+         * Value at the end of the event's duration (same as value for events which don't change over time)
+         */
+        public final int endValue;
+
+        /**
+         * Spoken text, or action description
+         */
+        public final String text;
+
+        /**
+         * Exercise being shown
+         */
+        public final Exercise exercise;
+
+        Event(int type, long timeMs, long durationMs, int value, String text, Exercise exercise) {
+            this(type, timeMs, durationMs, value, value, text, exercise);
+        }
+
+        Event(int type, long timeMs, long durationMs, int value, int endValue, String text, Exercise exercise) {
+            this.type = type;
+            this.timeMs = timeMs;
+            this.durationMs = durationMs;
+            this.value = value;
+            this.endValue = endValue;
+            this.text = text;
+            this.exercise = exercise;
+        }
+
+        /**
+         * Session time at which the action (or beep) is done
+         */
+        public long endMs() {
+            return timeMs + durationMs;
+        }
+
+        @Override
+        public String toString() {
+            return "[Event " + type + " @" + timeMs + " " + value + (text != null ? " " + text : "") + "]";
+        }
+    }
+
+    /**
+     * Events, sorted by time
+     */
+    private final Event[] mEvents;
+
+    /**
+     * Duration of the whole session
+     */
+    private final long mDurationMs;
+
+    private SessionTimeline(Event[] events, long durationMs) {
+        mEvents = events;
+        mDurationMs = durationMs;
+    }
+
+    public int size() {
+        return mEvents.length;
+    }
+
+    public Event get(int index) {
+        return mEvents[index];
+    }
+
+    public long getDurationMs() {
+        return mDurationMs;
+    }
+
+    /**
+     * Compile a list of steps
+     */
+    public static SessionTimeline compile(List<IStep> steps) {
+        List<Event> events = new ArrayList<>();
+
+        long timeMs = 0;
+
+        SwitchExerciseStep exercise = null;
+        int numActionsDone = 0;
+
+        for (int stepIndex = 0; stepIndex < steps.size(); stepIndex++) {
+            IStep step = steps.get(stepIndex);
+
+            int progress = progress(stepIndex, steps.size());
+
+            if (step instanceof FinishedStep) {
+                addTotalProgress(events, new Event(kTOTAL_PROGRESS, timeMs, 0, kPROGRESS_MAX, null, null));
+
+                if (exercise != null) {
+                    events.add(new Event(kEXERCISE_PROGRESS, timeMs, 0, kPROGRESS_MAX, null, null));
+                }
+
+                events.add(new Event(kSPEAK, timeMs, 0, 0, "All exercises finished", null));
+                events.add(new Event(kFINISH, timeMs, 0, 0, null, null));
+                break;
+            } else if (step instanceof SwitchExerciseStep) {
+                addTotalProgress(events, new Event(kTOTAL_PROGRESS, timeMs, 0, progress, null, null));
+
+                exercise = (SwitchExerciseStep) step;
+                numActionsDone = 0;
+
+                events.add(new Event(kSHOW_EXERCISE, timeMs, 0, 0, null, exercise.exercise));
+                events.add(new Event(kSPEAK, timeMs, 0, 0,
+                        exercise.exercise.name + ". " + exercise.exercise.briefDescription, null));
+            } else if (step instanceof ActionStep) {
+                ActionStep action = (ActionStep) step;
+
+                // Progress runs over the duration of the action, up to where the next step starts
+                addTotalProgress(events, new Event(kTOTAL_PROGRESS, timeMs, action.durationMs,
+                        progress, progress(stepIndex + 1, steps.size()), null, null));
+
+                if (exercise != null) {
+                    // Rest before the first hold is not one of the exercise actions
+                    events.add(new Event(kEXERCISE_PROGRESS, timeMs, action.durationMs,
+                            progress(numActionsDone, exercise.numActions + 1),
+                            progress(numActionsDone + 1, exercise.numActions + 1), null, null));
+                    numActionsDone++;
+                }
+
+                events.add(new Event(kACTION, timeMs, action.durationMs, stepIndex, action.text, null));
+                events.add(new Event(kSPEAK, timeMs, 0, 0, action.text, null));
+
+                long endMs = timeMs + action.durationMs;
+
+                // One warning beep per each second before the action is done
+                for (int remaining = action.numWarningBeeps; remaining > 0; remaining--) {
+                    boolean last = remaining == 1;
+                    int durationMs = last ? kFINAL_BEEP_DURATION_MS : kWARNING_BEEP_DURATION_MS;
+                    long beepMs = Math.max(timeMs, endMs - remaining * 1000L);
+
+                    events.add(new Event(kBEEP, beepMs, durationMs, last ? 1 : 0, null, null));
+                    events.add(new Event(kVIBRATE, beepMs, durationMs, last ? 1 : 0, null, null));
+                }
+
+                timeMs = endMs;
+            }
+        }
+
+        // Stable, so events at the same time keep their order
+        Collections.sort(events, (a, b) -> Long.compare(a.timeMs, b.timeMs));
+
+        return new SessionTimeline(events.toArray(new Event[0]), timeMs);
+    }
+
+    /**
+     * Add a session progress event, replacing an earlier one at the same time
+     */
+    private static void addTotalProgress(List<Event> events, Event progress) {
+        for (int i = events.size() - 1; i >= 0 && events.get(i).timeMs == progress.timeMs; i--) {
+            if (events.get(i).type == kTOTAL_PROGRESS) {
+                events.remove(i);
+                break;
+            }
+        }
+
+        events.add(progress);
+    }
+
+    private static int progress(int done, int total) {
+        return (int) Math.min(kPROGRESS_MAX, (long) done * kPROGRESS_MAX / total);
+    }
+}
@@ -0,0 +1,237 @@
+package com.stretcher.session;
+
+import com.stretcher.steps.ActionStep;
+import com.stretcher.steps.IStep;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Recorded session: user inputs, wakeup timings and observed outputs
+ * <p>
+ * Binary format: "STRC" magic, version byte and 4 byte plan ID, followed by events. Each event is
+ * a type byte, the time since the previous event and an argument, both as unsigned varints. Times
+ * are relative to the first event.
+ */
+public class SessionTrace {
+    /**
+     * File magic
+     */
+    static final byte[] kMAGIC = {'S', 'T', 'R', 'C'};
+
+    /**
+     * Format version
+     */
+    static final int kVERSION = 2;
+
+    /**
+     * Session started (input), argument is the power policy level ordinal it started with
+     */
+    public static final int kSTART = 1;
+
+    /**
+     * Session paused (input)
+     */
+    public static final int kPAUSE = 2;
+
+    /**
+     * Session resumed (input)
+     */
+    public static final int kRESUME = 3;
+
+    /**
+     * Action skipped (input)
+     */
+    public static final int kSKIP = 4;
+
+    /**
+     * Scheduled wakeup fired, argument is how late it fired in ms
+     */
+    public static final int kWAKEUP = 5;
+
+    /**
+     * Action step started, argument is the step index
+     */
+    public static final int kSTEP = 6;
+
+    /**
+     * Warning beep played, argument is 1 for the last beep
+     */
+    public static final int kBEEP = 7;
+
+    /**
+     * All steps done
+     */
+    public static final int kFINISH = 8;
+
+    /**
+     * Power policy level changed (input), argument is the level ordinal
+     */
+    public static final int kPOWER = 9;
+
+    /**
+     * Single trace event
+     */
+    public static class Event {
+        public final int type;
+
+        public final long timeMs;
+
+        public final long arg;
+
+        public Event(int type, long timeMs, long arg) {
+            this.type = type;
+            this.timeMs = timeMs;
+            this.arg = arg;
+        }
+
+        /**
+         * Indication if the event is an input to the engine (as opposed to something it did)
+         */
+        public boolean isInput() {
+            return type == kSTART || type == kPAUSE || type == kRESUME || type == kSKIP || type == kPOWER;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Event)) {
+                return false;
+            }
+
+            Event other = (Event) o;
+            return type == other.type && timeMs == other.timeMs && arg == other.arg;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (31 * (31 * type + timeMs) + arg);
+        }
+
+        @Override
+        public String toString() {
+            return "[" + typeName(type) + " @" + timeMs + " " + arg + "]";
+        }
+    }
+
+    /**
+     * ID of the plan the session ran
+     */
+    public final int planId;
+
+    /**
+     * Events, ordered by time
+     */
+    public final List<Event> events;
+
+    public SessionTrace(int planId, List<Event> events) {
+        this.planId = planId;
+        this.events = Collections.unmodifiableList(events);
+    }
+
+    /**
+     * Identify a plan by its steps, so that a trace is only replayed against the plan it was recorded with
+     */
+    public static int planId(List<IStep> steps) {
+        int id = 1;
+
+        for (IStep step : steps) {
+            id = 31 * id + step.getClass().getSimpleName().hashCode();
+
+            if (step instanceof ActionStep) {
+                ActionStep action = (ActionStep) step;
+
+                id = 31 * id + action.text.hashCode();
+                id = 31 * id + Long.hashCode(action.durationMs);
+            }
+        }
+
+        return id;
+    }
+
+    /**
+     * Read a trace written by {@link SessionTraceRecorder}
+     */
+    public static SessionTrace read(InputStream stream) throws IOException {
+        DataInputStream input = new DataInputStream(stream);
+
+        byte[] magic = new byte[kMAGIC.length];
+        input.readFully(magic);
+
+        for (int i = 0; i < kMAGIC.length; i++) {
+            if (magic[i] != kMAGIC[i]) {
+                throw new IOException("Not a session trace");
+            }
+        }
+
+        int version = input.readUnsignedByte();
+        if (version != kVERSION) {
+            throw new IOException("Unsupported session trace version: " + version);
+        }
+
+        int planId = input.readInt();
+
+        List<Event> events = new ArrayList<>();
+        long timeMs = 0;
+
+        while (true) {
+            int type = input.read();
+            if (type == -1) {
+                break;
+            }
+
+            timeMs += readVarLong(input);
+            events.add(new Event(type, timeMs, readVarLong(input)));
+        }
+
+        return new SessionTrace(planId, events);
+    }
+
+    static String typeName(int type) {
+        switch (type) {
+            case kSTART:
+                return "START";
+            case kPAUSE:
+                return "PAUSE";
+            case kRESUME:
+                return "RESUME";
+            case kSKIP:
+                return "SKIP";
+            case kWAKEUP:
+                return "WAKEUP";
+            case kSTEP:
+                return "STEP";
+            case kBEEP:
+                return "BEEP";
+            case kFINISH:
+                return "FINISH";
+            case kPOWER:
+                return "POWER";
+            default:
+                return "UNKNOWN(" + type + ")";
+        }
+    }
+
+    private static long readVarLong(DataInputStream input) throws IOException {
+        long value = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = input.read();
+            if (b == -1) {
+                throw new EOFException("Truncated session trace");
+            }
+
+            value |= (long) (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IOException("Malformed session trace");
+    }
+}
@@ -0,0 +1,81 @@
+package com.stretcher.session;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Records session events into a compact in-memory buffer (see {@link SessionTrace} for the format)
+ */
+public class SessionTraceRecorder {
+    /**
+     * Encoded trace
+     */
+    private byte[] mBuffer = new byte[4096];
+
+    /**
+     * Number of used bytes in the buffer
+     */
+    private int mSize = 0;
+
+    /**
+     * Time of the previous event (-1 if nothing recorded yet)
+     */
+    private long mPreviousTimeMs = -1;
+
+    public SessionTraceRecorder(int planId) {
+        for (byte b : SessionTrace.kMAGIC) {
+            writeByte(b);
+        }
+
+        writeByte(SessionTrace.kVERSION);
+
+        writeByte(planId >>> 24);
+        writeByte(planId >>> 16);
+        writeByte(planId >>> 8);
+        writeByte(planId);
+    }
+
+    /**
+     * Record an event
+     *
+     * @param type   Event type (one of the SessionTrace constants)
+     * @param timeMs Monotonic time of the event
+     * @param arg    Event argument (non negative)
+     */
+    void record(int type, long timeMs, long arg) {
+        if (mPreviousTimeMs < 0) {
+            mPreviousTimeMs = timeMs;
+        }
+
+        writeByte(type);
+        writeVarLong(Math.max(0, timeMs - mPreviousTimeMs));
+        writeVarLong(arg);
+
+        mPreviousTimeMs = Math.max(mPreviousTimeMs, timeMs);
+    }
+
+    /**
+     * Write everything recorded so far
+     */
+    public void writeTo(OutputStream output) throws IOException {
+        output.write(mBuffer, 0, mSize);
+    }
+
+    private void writeVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        writeByte((int) value);
+    }
+
+    private void writeByte(int b) {
+        if (mSize == mBuffer.length) {
+            mBuffer = Arrays.copyOf(mBuffer, mBuffer.length * 2);
+        }
+
+        mBuffer[mSize++] = (byte) b;
+    }
+}
@@ -0,0 +1,38 @@
+package com.stretcher.session;
+
+/**
+ * Counts scheduled tasks before handing them to another scheduler
+ */
+class CountingScheduler implements IScheduler {
+    /**
+     * Scheduler doing the actual work
+     */
+    private final IScheduler mScheduler;
+
+    /**
+     * Total number of scheduled tasks
+     */
+    int numScheduled = 0;
+
+    /**
+     * Time of the most recently scheduled task
+     */
+    long lastAtMs = 0;
+
+    CountingScheduler(IScheduler scheduler) {
+        mScheduler = scheduler;
+    }
+
+    @Override
+    public void schedule(Runnable task, long atMs) {
+        numScheduled++;
+        lastAtMs = atMs;
+
+        mScheduler.schedule(task, atMs);
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+        mScheduler.cancel(task);
+    }
+}
@@ -0,0 +1,99 @@
+package com.stretcher.session;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.fail;
+
+/**
+ * Collects measured values along with their budgets, and writes them as a JSON report
+ */
+class PerformanceReport {
+    /**
+     * System property pointing to the report directory
+     */
+    private static final String kREPORT_DIR_PROPERTY = "stretcher.reportDir";
+
+    /**
+     * Report directory used if the property is not set
+     */
+    private static final String kDEFAULT_REPORT_DIR = "build/reports/session-performance";
+
+    /**
+     * Report name
+     */
+    private final String mName;
+
+    /**
+     * Measured values
+     */
+    private final Map<String, Long> mValues = new LinkedHashMap<>();
+
+    /**
+     * Budgets of measured values
+     */
+    private final Map<String, Long> mBudgets = new LinkedHashMap<>();
+
+    PerformanceReport(String name) {
+        mName = name;
+    }
+
+    /**
+     * Record a value which should not exceed the budget
+     */
+    void record(String metric, long value, long budget) {
+        mValues.put(metric, value);
+        mBudgets.put(metric, budget);
+    }
+
+    /**
+     * Write the report, then fail if any of the values exceeds its budget
+     */
+    void writeAndCheck() throws IOException {
+        write();
+
+        StringBuilder failures = new StringBuilder();
+
+        for (Map.Entry<String, Long> entry : mValues.entrySet()) {
+            long budget = mBudgets.get(entry.getKey());
+
+            if (entry.getValue() > budget) {
+                failures.append("\n  ").append(entry.getKey())
+                        .append(": ").append(entry.getValue())
+                        .append(" > ").append(budget);
+            }
+        }
+
+        if (failures.length() > 0) {
+            fail(mName + " exceeds budget:" + failures);
+        }
+    }
+
+    private void write() throws IOException {
+        File dir = new File(System.getProperty(kREPORT_DIR_PROPERTY, kDEFAULT_REPORT_DIR));
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+
+        try (Writer writer = new FileWriter(new File(dir, mName + ".json"))) {
+            writer.write("{\n  \"name\": \"" + mName + "\",\n  \"metrics\": {");
+
+            String separator = "\n";
+            for (Map.Entry<String, Long> entry : mValues.entrySet()) {
+                long budget = mBudgets.get(entry.getKey());
+
+                writer.write(separator + "    \"" + entry.getKey() + "\": {"
+                        + "\"value\": " + entry.getValue()
+                        + ", \"budget\": " + budget
+                        + ", \"withinBudget\": " + (entry.getValue() <= budget) + "}");
+                separator = ",\n";
+            }
+
+            writer.write("\n  }\n}\n");
+        }
+    }
+}
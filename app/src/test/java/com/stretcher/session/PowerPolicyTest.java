@@ -0,0 +1,361 @@
+package com.stretcher.session;
+
+import com.stretcher.Exercise;
+import com.stretcher.steps.IStep;
+import com.stretcher.steps.StepGenerator;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Power policy levels for each simulated power state, and their effect on a session
+ */
+public class PowerPolicyTest {
+    @Test
+    public void fullFidelityByDefault() {
+        PowerPolicy policy = new PowerPolicy();
+
+        assertEquals(PowerPolicy.Level.FULL, policy.getLevel());
+        assertEquals(PowerPolicy.kFULL_REFRESH_PERIOD_MS, policy.getDisplayRefreshPeriodMs());
+        assertTrue(policy.isHapticEnabled(false));
+        assertTrue(policy.isHapticEnabled(true));
+        assertEquals(PowerPolicy.kDEFAULT_BRIGHTNESS, policy.getScreenBrightness(1.0f), 0);
+    }
+
+    @Test
+    public void batterySaverReduces() {
+        PowerPolicy policy = new PowerPolicy();
+
+        policy.setPowerSaveMode(true);
+        assertReduced(policy);
+
+        policy.setPowerSaveMode(false);
+        assertEquals(PowerPolicy.Level.FULL, policy.getLevel());
+    }
+
+    @Test
+    public void lowBatteryReduces() {
+        PowerPolicy policy = new PowerPolicy();
+
+        policy.setBattery(21, false);
+        assertEquals(PowerPolicy.Level.FULL, policy.getLevel());
+
+        policy.setBattery(20, false);
+        assertReduced(policy);
+
+        // Charging doesn't drain the battery any further
+        policy.setBattery(20, true);
+        assertEquals(PowerPolicy.Level.FULL, policy.getLevel());
+    }
+
+    @Test
+    public void criticalBatteryMinimal() {
+        PowerPolicy policy = new PowerPolicy();
+
+        policy.setBattery(5, false);
+        assertMinimal(policy);
+
+        policy.setBattery(5, true);
+        assertEquals(PowerPolicy.Level.FULL, policy.getLevel());
+    }
+
+    @Test
+    public void thermalStatus() {
+        PowerPolicy policy = new PowerPolicy();
+
+        policy.setThermalStatus(PowerPolicy.kTHERMAL_STATUS_LIGHT);
+        assertEquals(PowerPolicy.Level.FULL, policy.getLevel());
+
+        policy.setThermalStatus(PowerPolicy.kTHERMAL_STATUS_MODERATE);
+        assertReduced(policy);
+
+        policy.setThermalStatus(PowerPolicy.kTHERMAL_STATUS_SEVERE);
+        assertMinimal(policy);
+
+        // Anything above severe (critical, emergency, shutdown) is minimal as well
+        policy.setThermalStatus(PowerPolicy.kTHERMAL_STATUS_SEVERE + 3);
+        assertMinimal(policy);
+
+        policy.setThermalStatus(PowerPolicy.kTHERMAL_STATUS_NONE);
+        assertEquals(PowerPolicy.Level.FULL, policy.getLevel());
+    }
+
+    @Test
+    public void worstConditionWins() {
+        PowerPolicy policy = new PowerPolicy();
+
+        policy.setPowerSaveMode(true);
+        policy.setThermalStatus(PowerPolicy.kTHERMAL_STATUS_SEVERE);
+        assertMinimal(policy);
+
+        // Cooled down, but battery saver is still on
+        policy.setThermalStatus(PowerPolicy.kTHERMAL_STATUS_NONE);
+        assertReduced(policy);
+    }
+
+    @Test
+    public void batteryRecoveryHysteresis() {
+        PowerPolicy policy = new PowerPolicy();
+
+        policy.setBattery(4, false);
+        assertMinimal(policy);
+
+        // Has to recover past the threshold before leaving a level
+        policy.setBattery(10, false);
+        assertMinimal(policy);
+
+        policy.setBattery(11, false);
+        assertReduced(policy);
+
+        policy.setBattery(25, false);
+        assertReduced(policy);
+
+        policy.setBattery(26, false);
+        assertEquals(PowerPolicy.Level.FULL, policy.getLevel());
+    }
+
+    /**
+     * Hysteresis only applies when the battery caused the level
+     */
+    @Test
+    public void otherConditionsRecoverRightAway() {
+        PowerPolicy policy = new PowerPolicy();
+
+        // Within the hysteresis band, but never crossed the threshold
+        policy.setBattery(24, false);
+        policy.setPowerSaveMode(true);
+        assertReduced(policy);
+
+        policy.setPowerSaveMode(false);
+        assertEquals(PowerPolicy.Level.FULL, policy.getLevel());
+
+        policy.setBattery(8, false);
+        assertReduced(policy);
+
+        policy.setThermalStatus(PowerPolicy.kTHERMAL_STATUS_SEVERE);
+        assertMinimal(policy);
+
+        // Still low, but not critical
+        policy.setThermalStatus(PowerPolicy.kTHERMAL_STATUS_NONE);
+        assertReduced(policy);
+    }
+
+    /**
+     * Screen is only ever dimmed, a screen already darker than the cap stays as it is
+     */
+    @Test
+    public void brightnessNeverRaised() {
+        PowerPolicy policy = new PowerPolicy();
+
+        policy.setPowerSaveMode(true);
+        assertEquals(0.3f, policy.getScreenBrightness(0.3f), 0);
+        assertEquals(PowerPolicy.kREDUCED_BRIGHTNESS, policy.getScreenBrightness(0.8f), 0);
+
+        policy.setThermalStatus(PowerPolicy.kTHERMAL_STATUS_SEVERE);
+        assertEquals(0.1f, policy.getScreenBrightness(0.1f), 0);
+        assertEquals(PowerPolicy.kMINIMAL_BRIGHTNESS, policy.getScreenBrightness(0.3f), 0);
+
+        // Not overridden if the current brightness isn't known
+        assertEquals(PowerPolicy.kDEFAULT_BRIGHTNESS, policy.getScreenBrightness(PowerPolicy.kDEFAULT_BRIGHTNESS), 0);
+    }
+
+    @Test
+    public void listenersNotifiedOnChangeOnly() {
+        PowerPolicy policy = new PowerPolicy();
+
+        List<PowerPolicy.Level> levels = new ArrayList<>();
+        policy.addListener(levels::add);
+
+        policy.setBattery(90, false);
+        policy.setPowerSaveMode(true);
+        policy.setBattery(15, false);
+        policy.setThermalStatus(PowerPolicy.kTHERMAL_STATUS_SEVERE);
+        policy.setThermalStatus(PowerPolicy.kTHERMAL_STATUS_NONE);
+        policy.setPowerSaveMode(false);
+        policy.setBattery(30, true);
+
+        List<PowerPolicy.Level> expected = new ArrayList<>();
+        expected.add(PowerPolicy.Level.REDUCED);
+        expected.add(PowerPolicy.Level.MINIMAL);
+        expected.add(PowerPolicy.Level.REDUCED);
+        expected.add(PowerPolicy.Level.FULL);
+        assertEquals(expected, levels);
+    }
+
+    /**
+     * Reduced session shows whole seconds and only vibrates at the end of each action
+     */
+    @Test
+    public void reducedSessionDoesLessWork() {
+        List<IStep> steps = StepGenerator.generateSteps(Exercise.load());
+
+        VirtualScheduler scheduler = new VirtualScheduler();
+        SessionProbe probe = new SessionProbe(null, false);
+
+        PowerPolicy policy = new PowerPolicy();
+        policy.setPowerSaveMode(true);
+
+        SessionEngine engine = new SessionEngine(steps, scheduler, scheduler, probe, probe);
+        engine.setPowerPolicy(policy);
+        engine.start();
+
+        scheduler.runUntilIdle();
+
+        assertTrue(probe.finished);
+        assertEquals(PowerPolicy.kREDUCED_REFRESH_PERIOD_MS, probe.lastGranularityMs);
+        assertTrue("wakeups: " + scheduler.numScheduled,
+                scheduler.numScheduled <= SessionBudgets.maxWakeups(steps, PowerPolicy.kREDUCED_REFRESH_PERIOD_MS));
+        assertEquals(SessionBudgets.numActions(steps), probe.numVibrations);
+
+        // Audio cues are not affected
+        assertEquals(SessionBudgets.maxBeeps(steps), probe.numBeeps);
+    }
+
+    /**
+     * End of each action is still felt at the lowest level
+     */
+    @Test
+    public void minimalSessionKeepsEssentialHaptics() {
+        List<IStep> steps = StepGenerator.generateSteps(Exercise.load());
+
+        VirtualScheduler scheduler = new VirtualScheduler();
+        SessionProbe probe = new SessionProbe(null, false);
+
+        PowerPolicy policy = new PowerPolicy();
+        policy.setThermalStatus(PowerPolicy.kTHERMAL_STATUS_SEVERE);
+
+        SessionEngine engine = new SessionEngine(steps, scheduler, scheduler, probe, probe);
+        engine.setPowerPolicy(policy);
+        engine.start();
+
+        scheduler.runUntilIdle();
+
+        assertTrue(probe.finished);
+        assertEquals(SessionBudgets.numActions(steps), probe.numVibrations);
+    }
+
+    /**
+     * Level changes take effect mid-session, and full fidelity comes back once conditions recover
+     */
+    @Test
+    public void levelChangesMidSession() {
+        List<IStep> steps = StepGenerator.generateSteps(Exercise.load());
+
+        VirtualScheduler scheduler = new VirtualScheduler();
+        SessionProbe probe = new SessionProbe(null, false);
+
+        PowerPolicy policy = new PowerPolicy();
+
+        SessionEngine engine = new SessionEngine(steps, scheduler, scheduler, probe, probe);
+        engine.setPowerPolicy(policy);
+        engine.start();
+
+        scheduler.advance(1_050);
+        assertEquals(PowerPolicy.kFULL_REFRESH_PERIOD_MS, probe.lastGranularityMs);
+        assertEquals(4_000, probe.lastRemainingMs);
+
+        // Redrawn right away with the new granularity, next refresh on the whole second
+        policy.setThermalStatus(PowerPolicy.kTHERMAL_STATUS_MODERATE);
+        assertEquals(PowerPolicy.kREDUCED_REFRESH_PERIOD_MS, probe.lastGranularityMs);
+        assertEquals(3_950, probe.lastRemainingMs);
+
+        int numUpdates = probe.numCountdownUpdates;
+        scheduler.advance(900);
+        assertEquals(numUpdates, probe.numCountdownUpdates);
+        scheduler.advance(50);
+        assertEquals(numUpdates + 1, probe.numCountdownUpdates);
+        assertEquals(3_000, probe.lastRemainingMs);
+
+        // Paused sessions don't do anything until resumed
+        engine.setPaused(true);
+        policy.setThermalStatus(PowerPolicy.kTHERMAL_STATUS_NONE);
+        assertEquals(numUpdates + 1, probe.numCountdownUpdates);
+        assertFalse(scheduler.hasPending());
+
+        engine.setPaused(false);
+        assertEquals(PowerPolicy.kFULL_REFRESH_PERIOD_MS, probe.lastGranularityMs);
+
+        scheduler.runUntilIdle();
+        assertTrue(probe.finished);
+    }
+
+    /**
+     * Progress is only animated at full fidelity; level changes mid-step stop or restart it where
+     * it currently is
+     */
+    @Test
+    public void progressAnimatedAtFullOnly() {
+        List<IStep> steps = StepGenerator.generateSteps(Exercise.load());
+
+        VirtualScheduler scheduler = new VirtualScheduler();
+        SessionProbe probe = new SessionProbe(null, false);
+
+        PowerPolicy policy = new PowerPolicy();
+
+        SessionEngine engine = new SessionEngine(steps, scheduler, scheduler, probe, probe);
+        engine.setPowerPolicy(policy);
+        engine.start();
+
+        assertTrue(probe.lastProgressDurationMs > 0);
+        float from = probe.lastExerciseProgressFrom;
+        float to = probe.lastExerciseProgressTo;
+
+        scheduler.advance(1_000);
+        int numUpdates = probe.numProgressUpdates;
+
+        // Both bars stopped where they were
+        policy.setThermalStatus(PowerPolicy.kTHERMAL_STATUS_MODERATE);
+        assertEquals(numUpdates + 2, probe.numProgressUpdates);
+        assertEquals(0, probe.lastProgressDurationMs);
+        assertEquals(probe.lastExerciseProgressFrom, probe.lastExerciseProgressTo, 0);
+        assertTrue(probe.lastExerciseProgressFrom > from && probe.lastExerciseProgressFrom < to);
+
+        // Nothing moves until the step is done
+        scheduler.advance(1_000);
+        assertEquals(numUpdates + 2, probe.numProgressUpdates);
+
+        // Animated again from the current time
+        policy.setThermalStatus(PowerPolicy.kTHERMAL_STATUS_NONE);
+        assertEquals(numUpdates + 4, probe.numProgressUpdates);
+        assertEquals(from, probe.lastExerciseProgressFrom, 0);
+        assertEquals(to, probe.lastExerciseProgressTo, 0);
+        assertEquals(2_000, probe.lastProgressElapsedMs);
+
+        // Stopped while paused, animated from the pause time when resumed
+        engine.setPaused(true);
+        policy.setPowerSaveMode(true);
+        policy.setPowerSaveMode(false);
+        policy.setPowerSaveMode(true);
+        assertEquals(numUpdates + 4, probe.numProgressUpdates);
+
+        engine.setPaused(false);
+        assertEquals(numUpdates + 6, probe.numProgressUpdates);
+        assertEquals(0, probe.lastProgressDurationMs);
+
+        scheduler.runUntilIdle();
+        assertTrue(probe.finished);
+        assertEquals(1.0f, probe.lastExerciseProgressTo, 0);
+    }
+
+    private static void assertReduced(PowerPolicy policy) {
+        assertEquals(PowerPolicy.Level.REDUCED, policy.getLevel());
+        assertEquals(PowerPolicy.kREDUCED_REFRESH_PERIOD_MS, policy.getDisplayRefreshPeriodMs());
+        assertFalse(policy.isHapticEnabled(false));
+        assertTrue(policy.isHapticEnabled(true));
+        assertEquals(PowerPolicy.kREDUCED_BRIGHTNESS, policy.getScreenBrightness(1.0f), 0);
+    }
+
+    private static void assertMinimal(PowerPolicy policy) {
+        assertEquals(PowerPolicy.Level.MINIMAL, policy.getLevel());
+        assertEquals(PowerPolicy.kREDUCED_REFRESH_PERIOD_MS, policy.getDisplayRefreshPeriodMs());
+        assertFalse(policy.isHapticEnabled(false));
+        assertTrue(policy.isHapticEnabled(true));
+        assertEquals(PowerPolicy.kMINIMAL_BRIGHTNESS, policy.getScreenBrightness(1.0f), 0);
+    }
+}
@@ -0,0 +1,89 @@
+package com.stretcher.session;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Delays scheduled tasks by a given sequence of lateness values, reproducing how late wakeups
+ * fired on a device
+ * <p>
+ * Lateness is consumed per scheduled task and handed back if the task is cancelled before it
+ * runs, which matches the engine keeping a single wakeup pending.
+ */
+class ReplayScheduler implements IScheduler {
+    /**
+     * Scheduler doing the actual work
+     */
+    private final IScheduler mScheduler;
+
+    /**
+     * Lateness of each fired task, in order
+     */
+    private final long[] mLateness;
+
+    /**
+     * Index of the lateness applied to the next scheduled task
+     */
+    private int mNextLateness = 0;
+
+    /**
+     * Wrappers of scheduled tasks
+     */
+    private final Map<Runnable, Runnable> mWrappers = new HashMap<>();
+
+    /**
+     * Indication if a task is pending
+     */
+    private boolean mPending = false;
+
+    /**
+     * Number of tasks which ran
+     */
+    int numFired = 0;
+
+    ReplayScheduler(IScheduler scheduler, long[] lateness) {
+        mScheduler = scheduler;
+        mLateness = lateness;
+    }
+
+    @Override
+    public void schedule(Runnable task, long atMs) {
+        long latenessMs = mNextLateness < mLateness.length ? mLateness[mNextLateness] : 0;
+        mNextLateness++;
+
+        mPending = true;
+        mScheduler.schedule(wrap(task), atMs + latenessMs);
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+        Runnable wrapper = mWrappers.get(task);
+        if (wrapper == null) {
+            return;
+        }
+
+        mScheduler.cancel(wrapper);
+
+        if (mPending) {
+            mPending = false;
+            mNextLateness--;
+        }
+    }
+
+    private Runnable wrap(Runnable task) {
+        Runnable wrapper = mWrappers.get(task);
+
+        if (wrapper == null) {
+            wrapper = () -> {
+                mPending = false;
+                numFired++;
+
+                task.run();
+            };
+
+            mWrappers.put(task, wrapper);
+        }
+
+        return wrapper;
+    }
+}
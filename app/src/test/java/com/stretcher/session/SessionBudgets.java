@@ -0,0 +1,101 @@
+package com.stretcher.session;
+
+import com.stretcher.steps.ActionStep;
+import com.stretcher.steps.IStep;
+import com.stretcher.steps.SwitchExerciseStep;
+
+import java.util.List;
+
+/**
+ * Upper bounds on the work a session should do, derived from its plan
+ */
+class SessionBudgets {
+    /**
+     * Warning beeps per action
+     */
+    static final int kBEEPS_PER_ACTION = 3;
+
+    /**
+     * Bytes the engine may allocate while running a whole session (not counting compiling it)
+     */
+    static final long kMAX_ALLOCATED_BYTES = 64 * 1024;
+
+    static int numActions(List<IStep> steps) {
+        int count = 0;
+        for (IStep step : steps) {
+            if (step instanceof ActionStep) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    static int numExercises(List<IStep> steps) {
+        int count = 0;
+        for (IStep step : steps) {
+            if (step instanceof SwitchExerciseStep) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * One wakeup per countdown display refresh, plus one spare per action
+     */
+    static long maxWakeups(List<IStep> steps) {
+        return maxWakeups(steps, PowerPolicy.kFULL_REFRESH_PERIOD_MS);
+    }
+
+    /**
+     * One wakeup per countdown display refresh at the given granularity, plus one spare per action
+     */
+    static long maxWakeups(List<IStep> steps, long refreshPeriodMs) {
+        long count = 0;
+        for (IStep step : steps) {
+            if (step instanceof ActionStep) {
+                long durationMs = ((ActionStep) step).durationMs;
+
+                count += (durationMs + refreshPeriodMs - 1) / refreshPeriodMs;
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Every countdown refresh updates the view once
+     */
+    static long maxCountdownUpdates(List<IStep> steps) {
+        return maxWakeups(steps);
+    }
+
+    /**
+     * Progress animations are only configured when a step starts
+     */
+    static long maxProgressUpdates(List<IStep> steps) {
+        return 2L * steps.size();
+    }
+
+    /**
+     * Progress views are only changed by the main thread at step boundaries, and when the session
+     * finishes (animations within a step run on the render thread)
+     */
+    static long maxStaticProgressFrames(List<IStep> steps) {
+        return steps.size() + 1;
+    }
+
+    /**
+     * Every exercise & action is announced, as well as the end of the session
+     */
+    static long maxSpeak(List<IStep> steps) {
+        return numExercises(steps) + numActions(steps) + 1;
+    }
+
+    static long maxBeeps(List<IStep> steps) {
+        return (long) kBEEPS_PER_ACTION * numActions(steps);
+    }
+}
@@ -0,0 +1,203 @@
+package com.stretcher.session;
+
+import com.stretcher.Exercise;
+import com.stretcher.steps.ActionStep;
+import com.stretcher.steps.FinishedStep;
+import com.stretcher.steps.IStep;
+import com.stretcher.steps.StartedStep;
+import com.stretcher.steps.StepGenerator;
+import com.stretcher.steps.SwitchExerciseStep;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs complete sessions on a virtual clock, checking ordering and the amount of work done
+ */
+public class SessionEngineTest {
+    @Test
+    public void generatedStepOrder() {
+        List<Exercise> exercises = Exercise.load();
+        List<IStep> steps = StepGenerator.generateSteps(exercises);
+
+        assertTrue(steps.get(0) instanceof StartedStep);
+        assertTrue(steps.get(steps.size() - 1) instanceof FinishedStep);
+
+        int index = 1;
+        for (int exerciseIndex = 0; exerciseIndex < exercises.size(); exerciseIndex++) {
+            Exercise exercise = exercises.get(exerciseIndex);
+
+            SwitchExerciseStep switchStep = (SwitchExerciseStep) steps.get(index++);
+            assertEquals(exercise, switchStep.exercise);
+
+            // Rest before the first hold
+            ActionStep rest = (ActionStep) steps.get(index++);
+            assertEquals("Rest", rest.text);
+            assertEquals(exerciseIndex == 0 ? 5000 : 10_000, rest.durationMs);
+
+            // Holds alternate with rests, and the exercise ends with a hold
+            int numHolds = 0;
+            for (int i = 0; i < switchStep.numActions; i++) {
+                ActionStep action = (ActionStep) steps.get(index++);
+
+                boolean hold = i % 2 == 0;
+                assertEquals(hold, action.text.startsWith("Hold"));
+
+                if (hold) {
+                    numHolds++;
+                }
+            }
+
+            assertTrue(((ActionStep) steps.get(index - 1)).text.startsWith("Hold"));
+            assertEquals(exercise.numRepetitions * (exercise.bothSides ? 2 : 1), numHolds);
+        }
+
+        assertEquals(steps.size() - 1, index);
+    }
+
+    @Test
+    public void sessionAnnouncesStepsInOrder() {
+        List<IStep> steps = StepGenerator.generateSteps(Exercise.load());
+
+        List<String> expected = new ArrayList<>();
+        for (IStep step : steps) {
+            if (step instanceof SwitchExerciseStep) {
+                Exercise exercise = ((SwitchExerciseStep) step).exercise;
+                expected.add(exercise.name + ". " + exercise.briefDescription);
+            } else if (step instanceof ActionStep) {
+                expected.add(((ActionStep) step).text);
+            } else if (step instanceof FinishedStep) {
+                expected.add("All exercises finished");
+            }
+        }
+
+        SessionProbe probe = new SessionProbe(null, true);
+        runSession(steps, probe);
+
+        assertTrue(probe.finished);
+        assertEquals(expected, probe.spoken);
+    }
+
+    @Test
+    public void sessionWorkBudget() throws Exception {
+        // Warm up, so class loading & JIT don't count as allocations
+        runSession(StepGenerator.generateSteps(Exercise.load()), new SessionProbe(null, false));
+
+        List<IStep> steps = StepGenerator.generateSteps(Exercise.load());
+        SessionProbe probe = new SessionProbe(null, false);
+        VirtualScheduler scheduler = new VirtualScheduler();
+
+        // Compiling the session is a one-off, only running it counts
+        SessionEngine engine = new SessionEngine(steps, scheduler, scheduler, probe, probe);
+
+        long allocatedBefore = allocatedBytes();
+        engine.start();
+        scheduler.runUntilIdle();
+        long allocatedBytes = allocatedBytes() - allocatedBefore;
+
+        assertTrue(probe.finished);
+
+        PerformanceReport report = new PerformanceReport("SessionEngineTest.sessionWorkBudget");
+        report.record("wakeups", scheduler.numScheduled, SessionBudgets.maxWakeups(steps));
+        report.record("countdownUpdates", probe.numCountdownUpdates, SessionBudgets.maxCountdownUpdates(steps));
+        report.record("progressUpdates", probe.numProgressUpdates, SessionBudgets.maxProgressUpdates(steps));
+        report.record("speak", probe.numSpeak, SessionBudgets.maxSpeak(steps));
+        report.record("beeps", probe.numBeeps, SessionBudgets.maxBeeps(steps));
+        report.record("vibrations", probe.numVibrations, SessionBudgets.maxBeeps(steps));
+        report.record("prepared", probe.numPrepared, SessionBudgets.numExercises(steps));
+        report.record("allocatedBytes", allocatedBytes, SessionBudgets.kMAX_ALLOCATED_BYTES);
+        report.writeAndCheck();
+
+        // Each action ends with the final beep
+        assertEquals(SessionBudgets.numActions(steps), probe.numFinalBeeps);
+    }
+
+    @Test
+    public void pausedSessionSchedulesNothing() {
+        List<IStep> steps = StepGenerator.generateSteps(Exercise.load());
+        SessionProbe probe = new SessionProbe(null, false);
+        VirtualScheduler scheduler = new VirtualScheduler();
+
+        SessionEngine engine = new SessionEngine(steps, scheduler, scheduler, probe, probe);
+        engine.start();
+
+        scheduler.advance(2_500);
+        engine.setPaused(true);
+        assertTrue(engine.isPaused());
+        assertFalse(scheduler.hasPending());
+
+        int numScheduled = scheduler.numScheduled;
+        int numCountdownUpdates = probe.numCountdownUpdates;
+
+        scheduler.advance(60_000);
+        assertEquals(numScheduled, scheduler.numScheduled);
+        assertEquals(numCountdownUpdates, probe.numCountdownUpdates);
+
+        // The first rest continues where it left off, last beep one second before it ends
+        engine.setPaused(false);
+        scheduler.advance(1_499);
+        assertEquals(0, probe.numFinalBeeps);
+        scheduler.advance(1);
+        assertEquals(1, probe.numFinalBeeps);
+    }
+
+    @Test
+    public void onlyUpcomingExercisesArePrepared() {
+        List<IStep> steps = StepGenerator.generateSteps(Exercise.load());
+        SessionProbe probe = new SessionProbe(null, false);
+        VirtualScheduler scheduler = new VirtualScheduler();
+
+        SessionEngine engine = new SessionEngine(steps, scheduler, scheduler, probe, probe);
+        engine.start();
+
+        // First exercise is shown right away, nothing to prepare it for
+        assertEquals(1, probe.numExerciseSwitches);
+        assertEquals(0, probe.numPrepared);
+
+        scheduler.runUntilIdle();
+        assertEquals(SessionBudgets.numExercises(steps) - 1, probe.numPrepared);
+    }
+
+    @Test
+    public void skipMovesToNextAction() {
+        List<IStep> steps = StepGenerator.generateSteps(Exercise.load());
+        SessionProbe probe = new SessionProbe(null, true);
+        VirtualScheduler scheduler = new VirtualScheduler();
+
+        SessionEngine engine = new SessionEngine(steps, scheduler, scheduler, probe, probe);
+        engine.start();
+
+        engine.setPaused(true);
+        engine.skipAction();
+
+        assertFalse(engine.isPaused());
+        assertEquals("Hold", probe.spoken.get(probe.spoken.size() - 1));
+        assertEquals(0, probe.numBeeps);
+    }
+
+    private static VirtualScheduler runSession(List<IStep> steps, SessionProbe probe) {
+        VirtualScheduler scheduler = new VirtualScheduler();
+
+        SessionEngine engine = new SessionEngine(steps, scheduler, scheduler, probe, probe);
+        engine.start();
+        scheduler.runUntilIdle();
+
+        return scheduler;
+    }
+
+    /**
+     * Bytes allocated so far by the current thread
+     */
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,282 @@
+package com.stretcher.session;
+
+import android.content.Context;
+import android.graphics.drawable.Animatable;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.TextView;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.stretcher.Exercise;
+import com.stretcher.HandlerScheduler;
+import com.stretcher.R;
+import com.stretcher.SessionViewBinder;
+import com.stretcher.UptimeClock;
+import com.stretcher.steps.IStep;
+import com.stretcher.steps.StepGenerator;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.shadows.ShadowChoreographer;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.util.ReflectionHelpers;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Runs a complete session on the main looper against the real activity layout, with the
+ * looper & clock controlled by Robolectric
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class SessionPerformanceTest {
+    /**
+     * Views bound by {@link SessionViewBinder}
+     */
+    private static final int kNUM_BOUND_VIEWS = 10;
+
+    /**
+     * Display refresh period (60Hz)
+     */
+    private static final long kFRAME_INTERVAL_MS = 16;
+
+    @Test
+    public void sessionWorkBudget() throws Exception {
+        ShadowChoreographer.setFrameInterval(kFRAME_INTERVAL_MS * 1_000_000);
+
+        Context context = ApplicationProvider.getApplicationContext();
+        View root = LayoutInflater.from(context).inflate(R.layout.activity_main, null);
+
+        int[] numFindViewById = {0};
+        SessionViewBinder binder = new SessionViewBinder(id -> {
+            numFindViewById[0]++;
+            return root.findViewById(id);
+        });
+
+        List<IStep> steps = StepGenerator.generateSteps(Exercise.load());
+        SessionProbe probe = new SessionProbe(binder, false);
+        CountingScheduler scheduler = new CountingScheduler(
+                new HandlerScheduler(new Handler(Looper.getMainLooper())));
+
+        SessionEngine engine = new SessionEngine(steps, new UptimeClock(), scheduler, probe, probe);
+        ProgressFrameCounter frames = new ProgressFrameCounter(root);
+        engine.start();
+
+        TextView timer = root.findViewById(R.id.timer);
+        assertEquals("00:05.000\nRest", timer.getText().toString());
+
+        // Progress within the step is left to the animated vector
+        assertTrue(isRunAnimated(root));
+
+        runSession(steps, scheduler, probe);
+        frames.stop();
+
+        assertTrue(probe.finished);
+        assertTrue(engine.isFinished());
+        assertEquals("Done", timer.getText().toString());
+        assertProgressFull(root);
+        assertTrue("frames: " + frames.numFrames, frames.numFrames >= minFrames(steps));
+
+        PerformanceReport report = new PerformanceReport("SessionPerformanceTest.sessionWorkBudget");
+        report.record("wakeups", scheduler.numScheduled, SessionBudgets.maxWakeups(steps));
+        report.record("viewUpdates", probe.numViewUpdates,
+                SessionBudgets.maxCountdownUpdates(steps) + SessionBudgets.maxProgressUpdates(steps)
+                        + SessionBudgets.numExercises(steps) + 1);
+        report.record("findViewById", numFindViewById[0], kNUM_BOUND_VIEWS);
+        report.record("speak", probe.numSpeak, SessionBudgets.maxSpeak(steps));
+        report.record("tones", probe.numBeeps, SessionBudgets.maxBeeps(steps));
+        report.record("prepared", probe.numPrepared, SessionBudgets.numExercises(steps));
+        report.record("progressFrames", frames.numProgressFrames, SessionBudgets.maxStaticProgressFrames(steps));
+        report.record("animatorFrames", frames.numAnimatorFrames, 0);
+        report.writeAndCheck();
+    }
+
+    /**
+     * Under power pressure progress isn't animated at all, and only moves at step boundaries
+     */
+    @Test
+    public void reducedSessionDoesNotAnimateProgress() throws Exception {
+        ShadowChoreographer.setFrameInterval(kFRAME_INTERVAL_MS * 1_000_000);
+
+        Context context = ApplicationProvider.getApplicationContext();
+        View root = LayoutInflater.from(context).inflate(R.layout.activity_main, null);
+
+        SessionViewBinder binder = new SessionViewBinder(root::findViewById);
+
+        List<IStep> steps = StepGenerator.generateSteps(Exercise.load());
+        SessionProbe probe = new SessionProbe(binder, false);
+        CountingScheduler scheduler = new CountingScheduler(
+                new HandlerScheduler(new Handler(Looper.getMainLooper())));
+
+        PowerPolicy policy = new PowerPolicy();
+        policy.setPowerSaveMode(true);
+
+        SessionEngine engine = new SessionEngine(steps, new UptimeClock(), scheduler, probe, probe);
+        engine.setPowerPolicy(policy);
+
+        ProgressFrameCounter frames = new ProgressFrameCounter(root);
+        engine.start();
+
+        assertFalse(isRunAnimated(root));
+
+        runSession(steps, scheduler, probe);
+        frames.stop();
+
+        assertTrue(probe.finished);
+        assertProgressFull(root);
+        assertTrue("frames: " + frames.numFrames, frames.numFrames >= minFrames(steps));
+
+        PerformanceReport report = new PerformanceReport("SessionPerformanceTest.reducedSessionDoesNotAnimateProgress");
+        report.record("wakeups", scheduler.numScheduled,
+                SessionBudgets.maxWakeups(steps, PowerPolicy.kREDUCED_REFRESH_PERIOD_MS));
+        report.record("progressFrames", frames.numProgressFrames, SessionBudgets.maxStaticProgressFrames(steps));
+        report.record("animatorFrames", frames.numAnimatorFrames, 0);
+        report.writeAndCheck();
+    }
+
+    /**
+     * Step the main looper from one wakeup to the next, until the session is finished
+     */
+    private static void runSession(List<IStep> steps, CountingScheduler scheduler, SessionProbe probe) {
+        ShadowLooper looper = shadowOf(Looper.getMainLooper());
+        long maxIterations = 2 * SessionBudgets.maxWakeups(steps);
+
+        for (long i = 0; !probe.finished && i < maxIterations; i++) {
+            looper.idleFor(Duration.ofMillis(Math.max(0, scheduler.lastAtMs - SystemClock.uptimeMillis())));
+        }
+    }
+
+    /**
+     * Frames the counter should have seen over the session (half of them, to leave some slack)
+     */
+    private static long minFrames(List<IStep> steps) {
+        return SessionTimeline.compile(steps).getDurationMs() / kFRAME_INTERVAL_MS / 2;
+    }
+
+    private static boolean isRunAnimated(View root) {
+        return ((Animatable) root.findViewById(R.id.exerciseProgressRun).getBackground()).isRunning()
+                && ((Animatable) root.findViewById(R.id.totalProgressRun).getBackground()).isRunning();
+    }
+
+    private static void assertProgressFull(View root) {
+        assertEquals(1.0f, root.findViewById(R.id.totalProgressFill).getScaleX(), 0);
+        assertEquals(1.0f, root.findViewById(R.id.exerciseProgressFill).getScaleX(), 0);
+        assertFalse(isRunAnimated(root));
+    }
+
+    /**
+     * Counts display frames (Choreographer callbacks), the ones in which the main thread changed
+     * a progress bar, and the ones in which it ticked any animator
+     */
+    private static class ProgressFrameCounter implements Choreographer.FrameCallback {
+        /**
+         * Progress bar views, as changed by the main thread
+         */
+        private final View[] mViews;
+
+        /**
+         * Last seen scale & translation of each view
+         */
+        private final float[] mState;
+
+        /**
+         * Main thread animation handler (ticks ValueAnimator & co.)
+         */
+        private final Object mAnimationHandler;
+
+        private boolean mStopped = false;
+
+        /**
+         * Number of frames
+         */
+        int numFrames = 0;
+
+        /**
+         * Number of frames in which either progress bar changed
+         */
+        int numProgressFrames = 0;
+
+        /**
+         * Number of frames in which the main thread had animators to tick
+         */
+        int numAnimatorFrames = 0;
+
+        ProgressFrameCounter(View root) {
+            mViews = new View[]{
+                    root.findViewById(R.id.totalProgressFill),
+                    root.findViewById(R.id.totalProgressRun),
+                    root.findViewById(R.id.exerciseProgressFill),
+                    root.findViewById(R.id.exerciseProgressRun)
+            };
+            mState = new float[2 * mViews.length];
+            update();
+
+            mAnimationHandler = ReflectionHelpers.callStaticMethod(
+                    ReflectionHelpers.loadClass(getClass().getClassLoader(), "android.animation.AnimationHandler"),
+                    "getInstance");
+
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        void stop() {
+            mStopped = true;
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (mStopped) {
+                return;
+            }
+
+            numFrames++;
+
+            if (update()) {
+                numProgressFrames++;
+            }
+
+            List<?> callbacks = ReflectionHelpers.getField(mAnimationHandler, "mAnimationCallbacks");
+            for (Object callback : callbacks) {
+                if (callback != null) {
+                    numAnimatorFrames++;
+                    break;
+                }
+            }
+
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        /**
+         * Check if any of the views changed since last checked
+         */
+        private boolean update() {
+            boolean changed = false;
+
+            for (int i = 0; i < mViews.length; i++) {
+                float scale = mViews[i].getScaleX();
+                float translation = mViews[i].getTranslationX();
+
+                changed |= scale != mState[2 * i] || translation != mState[2 * i + 1];
+
+                mState[2 * i] = scale;
+                mState[2 * i + 1] = translation;
+            }
+
+            return changed;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.stretcher.session;
+
+import com.stretcher.Exercise;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counts everything the engine outputs, optionally forwarding view updates to a real view
+ */
+class SessionProbe implements ISessionView, ISessionFeedback {
+    /**
+     * View updates are forwarded to (may be null)
+     */
+    private final ISessionView mView;
+
+    /**
+     * Spoken text, in order (null if not recorded)
+     */
+    final List<String> spoken;
+
+    int numPrepared = 0;
+    int numViewUpdates = 0;
+    int numCountdownUpdates = 0;
+    int numProgressUpdates = 0;
+    int numExerciseSwitches = 0;
+    int numSpeak = 0;
+    int numBeeps = 0;
+    int numFinalBeeps = 0;
+    int numVibrations = 0;
+    long lastRemainingMs = -1;
+    long lastGranularityMs = -1;
+    float lastExerciseProgressFrom = -1;
+    float lastExerciseProgressTo = -1;
+    long lastProgressDurationMs = -1;
+    long lastProgressElapsedMs = -1;
+    boolean progressPaused = false;
+    boolean finished = false;
+
+    SessionProbe(ISessionView view, boolean recordSpeech) {
+        mView = view;
+        spoken = recordSpeech ? new ArrayList<>() : null;
+    }
+
+    @Override
+    public void prepareExercise(Exercise exercise) {
+        numPrepared++;
+
+        if (mView != null) {
+            mView.prepareExercise(exercise);
+        }
+    }
+
+    @Override
+    public void showExercise(Exercise exercise) {
+        numViewUpdates++;
+        numExerciseSwitches++;
+
+        if (mView != null) {
+            mView.showExercise(exercise);
+        }
+    }
+
+    @Override
+    public void showCountdown(long remainingMs, long granularityMs, String text) {
+        numViewUpdates++;
+        numCountdownUpdates++;
+        lastRemainingMs = remainingMs;
+        lastGranularityMs = granularityMs;
+
+        if (mView != null) {
+            mView.showCountdown(remainingMs, granularityMs, text);
+        }
+    }
+
+    @Override
+    public void animateTotalProgress(float from, float to, long durationMs, long elapsedMs) {
+        numViewUpdates++;
+        numProgressUpdates++;
+        lastProgressDurationMs = durationMs;
+        lastProgressElapsedMs = elapsedMs;
+        progressPaused = false;
+
+        if (mView != null) {
+            mView.animateTotalProgress(from, to, durationMs, elapsedMs);
+        }
+    }
+
+    @Override
+    public void animateExerciseProgress(float from, float to, long durationMs, long elapsedMs) {
+        numViewUpdates++;
+        numProgressUpdates++;
+        lastExerciseProgressFrom = from;
+        lastExerciseProgressTo = to;
+        lastProgressDurationMs = durationMs;
+        lastProgressElapsedMs = elapsedMs;
+        progressPaused = false;
+
+        if (mView != null) {
+            mView.animateExerciseProgress(from, to, durationMs, elapsedMs);
+        }
+    }
+
+    @Override
+    public void pauseProgress(long elapsedMs) {
+        numViewUpdates++;
+        lastProgressElapsedMs = elapsedMs;
+        progressPaused = true;
+
+        if (mView != null) {
+            mView.pauseProgress(elapsedMs);
+        }
+    }
+
+    @Override
+    public void resumeProgress(long elapsedMs) {
+        numViewUpdates++;
+        lastProgressElapsedMs = elapsedMs;
+        progressPaused = false;
+
+        if (mView != null) {
+            mView.resumeProgress(elapsedMs);
+        }
+    }
+
+    @Override
+    public void showPaused(boolean paused) {
+        numViewUpdates++;
+
+        if (mView != null) {
+            mView.showPaused(paused);
+        }
+    }
+
+    @Override
+    public void showFinished() {
+        numViewUpdates++;
+        finished = true;
+
+        if (mView != null) {
+            mView.showFinished();
+        }
+    }
+
+    @Override
+    public void speak(String text) {
+        numSpeak++;
+
+        if (spoken != null) {
+            spoken.add(text);
+        }
+    }
+
+    @Override
+    public void stopSpeaking() {
+    }
+
+    @Override
+    public void beep(boolean last, int durationMs) {
+        numBeeps++;
+
+        if (last) {
+            numFinalBeeps++;
+        }
+    }
+
+    @Override
+    public void vibrate(int durationMs) {
+        numVibrations++;
+    }
+}
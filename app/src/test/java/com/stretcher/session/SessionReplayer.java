@@ -0,0 +1,155 @@
+package com.stretcher.session;
+
+import com.stretcher.steps.IStep;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replays a recorded session trace against the engine on a virtual clock
+ * <p>
+ * Inputs are applied at their recorded times, and every wakeup fires as late as it did when
+ * recorded. The engine records the replayed session, which can then be diffed against the original.
+ */
+class SessionReplayer {
+    /**
+     * Maximum number of differences listed by {@link #diff}
+     */
+    private static final int kMAX_DIFFERENCES = 20;
+
+    /**
+     * Replay a trace
+     *
+     * @param trace Recorded trace
+     * @param steps Plan the trace was recorded with
+     * @return Trace of the replayed session
+     */
+    static SessionTrace replay(SessionTrace trace, List<IStep> steps) throws IOException {
+        if (SessionTrace.planId(steps) != trace.planId) {
+            throw new IllegalArgumentException("Trace was recorded with a different plan: " + trace.planId);
+        }
+
+        VirtualScheduler clock = new VirtualScheduler();
+        ReplayScheduler scheduler = new ReplayScheduler(clock, lateness(trace));
+        SessionProbe probe = new SessionProbe(null, false);
+
+        SessionTraceRecorder recorder = new SessionTraceRecorder(trace.planId);
+
+        PowerPolicy policy = new PowerPolicy();
+
+        SessionEngine engine = new SessionEngine(steps, clock, scheduler, probe, probe);
+        engine.setPowerPolicy(policy);
+        engine.setTraceRecorder(recorder);
+
+        int numWakeups = 0;
+
+        for (SessionTrace.Event event : trace.events) {
+            if (event.type == SessionTrace.kWAKEUP) {
+                numWakeups++;
+            }
+
+            if (!event.isInput()) {
+                continue;
+            }
+
+            // Run what happened before the input, keeping the recorded order for wakeups firing
+            // in the same millisecond as the input
+            clock.runUntil(event.timeMs - 1);
+            while (scheduler.numFired < numWakeups && clock.runNext(event.timeMs)) {
+            }
+            clock.moveTo(event.timeMs);
+
+            switch (event.type) {
+                case SessionTrace.kSTART:
+                    setLevel(policy, PowerPolicy.Level.values()[(int) event.arg]);
+                    engine.start();
+                    break;
+                case SessionTrace.kPAUSE:
+                    engine.setPaused(true);
+                    break;
+                case SessionTrace.kRESUME:
+                    engine.setPaused(false);
+                    break;
+                case SessionTrace.kSKIP:
+                    engine.skipAction();
+                    break;
+                case SessionTrace.kPOWER:
+                    setLevel(policy, PowerPolicy.Level.values()[(int) event.arg]);
+                    break;
+            }
+        }
+
+        clock.runUntilIdle();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        recorder.writeTo(output);
+
+        return SessionTrace.read(new ByteArrayInputStream(output.toByteArray()));
+    }
+
+    /**
+     * Compare event timelines
+     *
+     * @return Differences, empty if the timelines are identical
+     */
+    static List<String> diff(SessionTrace expected, SessionTrace actual) {
+        List<String> differences = new ArrayList<>();
+
+        int size = Math.max(expected.events.size(), actual.events.size());
+
+        for (int i = 0; i < size && differences.size() < kMAX_DIFFERENCES; i++) {
+            SessionTrace.Event expectedEvent = i < expected.events.size() ? expected.events.get(i) : null;
+            SessionTrace.Event actualEvent = i < actual.events.size() ? actual.events.get(i) : null;
+
+            if (expectedEvent == null || !expectedEvent.equals(actualEvent)) {
+                differences.add("#" + i + ": expected " + expectedEvent + ", got " + actualEvent);
+            }
+        }
+
+        if (expected.events.size() != actual.events.size()) {
+            differences.add("expected " + expected.events.size() + " events, got " + actual.events.size());
+        }
+
+        return differences;
+    }
+
+    /**
+     * Bring the policy to a recorded level (only the level is recorded, not what caused it)
+     */
+    private static void setLevel(PowerPolicy policy, PowerPolicy.Level level) {
+        switch (level) {
+            case FULL:
+                policy.setThermalStatus(PowerPolicy.kTHERMAL_STATUS_NONE);
+                break;
+            case REDUCED:
+                policy.setThermalStatus(PowerPolicy.kTHERMAL_STATUS_MODERATE);
+                break;
+            case MINIMAL:
+                policy.setThermalStatus(PowerPolicy.kTHERMAL_STATUS_SEVERE);
+                break;
+        }
+    }
+
+    /**
+     * Lateness of each recorded wakeup, in order
+     */
+    private static long[] lateness(SessionTrace trace) {
+        List<Long> values = new ArrayList<>();
+
+        for (SessionTrace.Event event : trace.events) {
+            if (event.type == SessionTrace.kWAKEUP) {
+                values.add(event.arg);
+            }
+        }
+
+        long[] lateness = new long[values.size()];
+        for (int i = 0; i < lateness.length; i++) {
+            lateness[i] = values.get(i);
+        }
+
+        return lateness;
+    }
+}
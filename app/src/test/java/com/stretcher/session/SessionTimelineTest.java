@@ -0,0 +1,202 @@
+package com.stretcher.session;
+
+import com.stretcher.Exercise;
+import com.stretcher.steps.ActionStep;
+import com.stretcher.steps.IStep;
+import com.stretcher.steps.StepGenerator;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compiling steps into a timeline, and executing it with pauses & skips
+ */
+public class SessionTimelineTest {
+    @Test
+    public void compiledTimelineIsSorted() {
+        List<IStep> steps = StepGenerator.generateSteps(Exercise.load());
+        SessionTimeline timeline = SessionTimeline.compile(steps);
+
+        long durationMs = 0;
+        for (IStep step : steps) {
+            if (step instanceof ActionStep) {
+                durationMs += ((ActionStep) step).durationMs;
+            }
+        }
+
+        assertEquals(durationMs, timeline.getDurationMs());
+
+        for (int i = 1; i < timeline.size(); i++) {
+            assertTrue(timeline.get(i - 1).timeMs <= timeline.get(i).timeMs);
+        }
+
+        SessionTimeline.Event last = timeline.get(timeline.size() - 1);
+        assertEquals(SessionTimeline.kFINISH, last.type);
+        assertEquals(durationMs, last.timeMs);
+    }
+
+    @Test
+    public void actionEventsAreTimedAheadOfTime() {
+        SessionTimeline timeline = SessionTimeline.compile(StepGenerator.generateSteps(Exercise.load()));
+
+        // Only one progress milestone per point in time
+        int numProgressAtStart = 0;
+        for (int i = 0; i < timeline.size() && timeline.get(i).timeMs == 0; i++) {
+            if (timeline.get(i).type == SessionTimeline.kTOTAL_PROGRESS) {
+                numProgressAtStart++;
+            }
+        }
+        assertEquals(1, numProgressAtStart);
+
+        // Beeps of the first rest, one per each second before it's done
+        SessionTimeline.Event rest = find(timeline, SessionTimeline.kACTION, 0);
+        assertEquals("Rest", rest.text);
+
+        int index = indexOf(timeline, rest);
+        long[] expectedBeeps = {rest.endMs() - 3000, rest.endMs() - 2000, rest.endMs() - 1000};
+        int numBeeps = 0;
+
+        for (int i = index; i < timeline.size() && timeline.get(i).timeMs < rest.endMs(); i++) {
+            SessionTimeline.Event event = timeline.get(i);
+
+            if (event.type == SessionTimeline.kBEEP) {
+                assertEquals(expectedBeeps[numBeeps], event.timeMs);
+                assertEquals(numBeeps == 2 ? 1 : 0, event.value);
+                numBeeps++;
+            }
+        }
+        assertEquals(3, numBeeps);
+
+        // Next action starts right when the rest is done
+        assertEquals(rest.endMs(), find(timeline, SessionTimeline.kACTION, index + 1).timeMs);
+    }
+
+    @Test
+    public void progressIsAnimatedOverActions() {
+        List<IStep> steps = StepGenerator.generateSteps(Exercise.load());
+        SessionTimeline timeline = SessionTimeline.compile(steps);
+
+        int previousTotal = 0;
+        int numExercisesDone = 0;
+
+        for (int i = 0; i < timeline.size(); i++) {
+            SessionTimeline.Event event = timeline.get(i);
+
+            if (event.type == SessionTimeline.kTOTAL_PROGRESS) {
+                // Never goes back
+                assertTrue(event.value >= previousTotal);
+                assertTrue(event.endValue >= event.value);
+                previousTotal = event.endValue;
+
+                if (event.durationMs > 0) {
+                    // Runs over the whole action
+                    assertEquals(event.durationMs, find(timeline, SessionTimeline.kACTION, i).durationMs);
+                }
+            } else if (event.type == SessionTimeline.kEXERCISE_PROGRESS
+                    && event.endValue == SessionTimeline.kPROGRESS_MAX && event.durationMs > 0) {
+                numExercisesDone++;
+            }
+        }
+
+        assertEquals(SessionTimeline.kPROGRESS_MAX, previousTotal);
+        assertEquals(SessionBudgets.numExercises(steps), numExercisesDone);
+    }
+
+    @Test
+    public void progressAnimationsFollowPauseAndSkip() {
+        List<IStep> steps = StepGenerator.generateSteps(Exercise.load());
+        SessionProbe probe = new SessionProbe(null, false);
+        VirtualScheduler scheduler = new VirtualScheduler();
+
+        SessionEngine engine = new SessionEngine(steps, scheduler, scheduler, probe, probe);
+        engine.start();
+
+        // Animated over the whole rest before the first hold
+        assertEquals(5000, probe.lastProgressDurationMs);
+        assertEquals(0, probe.lastProgressElapsedMs);
+        assertEquals(0, probe.lastExerciseProgressFrom, 0);
+        float restEnd = probe.lastExerciseProgressTo;
+        assertTrue(restEnd > 0);
+
+        // Nothing to do for progress until the step is done
+        int numProgressUpdates = probe.numProgressUpdates;
+        scheduler.advance(1_234);
+        assertEquals(numProgressUpdates, probe.numProgressUpdates);
+
+        engine.setPaused(true);
+        assertTrue(probe.progressPaused);
+        assertEquals(1_234, probe.lastProgressElapsedMs);
+        scheduler.advance(10_000);
+        engine.setPaused(false);
+
+        // Continues where it was paused
+        assertFalse(probe.progressPaused);
+        assertEquals(1_234, probe.lastProgressElapsedMs);
+
+        // Animations of the hold start right away, where the rest would have ended
+        engine.skipAction();
+        assertEquals(15_000, probe.lastProgressDurationMs);
+        assertEquals(0, probe.lastProgressElapsedMs);
+        assertEquals(restEnd, probe.lastExerciseProgressFrom, 0);
+
+        scheduler.runUntilIdle();
+        assertEquals(1, probe.lastExerciseProgressTo, 0);
+    }
+
+    @Test
+    public void pauseAndSkipShiftSessionTime() {
+        List<IStep> steps = StepGenerator.generateSteps(Exercise.load());
+        SessionProbe probe = new SessionProbe(null, true);
+        VirtualScheduler scheduler = new VirtualScheduler();
+
+        SessionEngine engine = new SessionEngine(steps, scheduler, scheduler, probe, probe);
+        engine.start();
+        assertEquals(5000, probe.lastRemainingMs);
+
+        scheduler.advance(1_234);
+        engine.setPaused(true);
+        scheduler.advance(10_000);
+        engine.setPaused(false);
+
+        // Continues where it was paused
+        assertEquals(5000 - 1_234, probe.lastRemainingMs);
+
+        engine.skipAction();
+
+        // The hold starts right away
+        assertEquals(15_000, probe.lastRemainingMs);
+        assertEquals("Hold", probe.spoken.get(probe.spoken.size() - 1));
+
+        // Beeps of the skipped rest are dropped, the ones of the hold are on time
+        assertEquals(0, probe.numBeeps);
+        scheduler.advance(11_999);
+        assertEquals(0, probe.numBeeps);
+        scheduler.advance(1);
+        assertEquals(1, probe.numBeeps);
+    }
+
+    private static SessionTimeline.Event find(SessionTimeline timeline, int type, int from) {
+        for (int i = from; i < timeline.size(); i++) {
+            if (timeline.get(i).type == type) {
+                return timeline.get(i);
+            }
+        }
+
+        throw new AssertionError("No event of type " + type);
+    }
+
+    private static int indexOf(SessionTimeline timeline, SessionTimeline.Event event) {
+        for (int i = 0; i < timeline.size(); i++) {
+            if (timeline.get(i) == event) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
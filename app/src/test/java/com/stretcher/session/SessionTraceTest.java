@@ -0,0 +1,192 @@
+package com.stretcher.session;
+
+import com.stretcher.Exercise;
+import com.stretcher.steps.IStep;
+import com.stretcher.steps.StepGenerator;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+
+/**
+ * Session trace recording & replay
+ * <p>
+ * A trace pulled from a device can be replayed with
+ * {@code ./gradlew :app:testDebugUnitTest --tests '*SessionTraceTest.replayTraceFile' -Pstretcher.trace=<path>}
+ */
+public class SessionTraceTest {
+    /**
+     * System property pointing to a trace file to replay
+     */
+    private static final String kTRACE_PROPERTY = "stretcher.trace";
+
+    @Test
+    public void traceRoundTrip() throws IOException {
+        SessionTraceRecorder recorder = new SessionTraceRecorder(1234);
+        recorder.record(SessionTrace.kSTART, 5_000_000, 0);
+        recorder.record(SessionTrace.kWAKEUP, 5_000_100, 3);
+        recorder.record(SessionTrace.kSTEP, 5_000_100, 300);
+        recorder.record(SessionTrace.kPAUSE, 5_100_000, 0);
+
+        SessionTrace trace = read(recorder);
+
+        assertEquals(1234, trace.planId);
+
+        List<SessionTrace.Event> expected = new ArrayList<>();
+        expected.add(new SessionTrace.Event(SessionTrace.kSTART, 0, 0));
+        expected.add(new SessionTrace.Event(SessionTrace.kWAKEUP, 100, 3));
+        expected.add(new SessionTrace.Event(SessionTrace.kSTEP, 100, 300));
+        expected.add(new SessionTrace.Event(SessionTrace.kPAUSE, 100_000, 0));
+        assertEquals(expected, trace.events);
+    }
+
+    @Test
+    public void replayReproducesRecordedSession() throws IOException {
+        SessionTrace recorded = recordSession(new Random(42), new PowerPolicy());
+
+        // Recorded what was asked for
+        assertEquals(SessionTrace.kSTART, recorded.events.get(0).type);
+        assertEquals(SessionTrace.kFINISH, recorded.events.get(recorded.events.size() - 1).type);
+        assertEquals(1, count(recorded, SessionTrace.kSKIP));
+        assertEquals(2, count(recorded, SessionTrace.kPAUSE));
+        assertEquals(2, count(recorded, SessionTrace.kPOWER));
+
+        SessionTrace replayed = SessionReplayer.replay(recorded, StepGenerator.generateSteps(Exercise.load()));
+
+        assertEquals(new ArrayList<String>(), SessionReplayer.diff(recorded, replayed));
+    }
+
+    @Test
+    public void replayReproducesSessionStartedUnderPressure() throws IOException {
+        // Policy is fed before the session starts, as the activity does
+        PowerPolicy policy = new PowerPolicy();
+        policy.setBattery(15, false);
+
+        SessionTrace recorded = recordSession(new Random(7), policy);
+
+        // Starting level is part of the start event, nothing else changed the level
+        assertEquals(SessionTrace.kSTART, recorded.events.get(0).type);
+        assertEquals(PowerPolicy.Level.REDUCED.ordinal(), recorded.events.get(0).arg);
+        assertEquals(0, count(recorded, SessionTrace.kPOWER));
+
+        SessionTrace replayed = SessionReplayer.replay(recorded, StepGenerator.generateSteps(Exercise.load()));
+
+        assertEquals(new ArrayList<String>(), SessionReplayer.diff(recorded, replayed));
+    }
+
+    @Test
+    public void replayDetectsDifferentInputs() throws IOException {
+        SessionTrace recorded = recordSession(new Random(42), new PowerPolicy());
+
+        // Pretend the skip never happened
+        List<SessionTrace.Event> events = new ArrayList<>();
+        for (SessionTrace.Event event : recorded.events) {
+            if (event.type != SessionTrace.kSKIP) {
+                events.add(event);
+            }
+        }
+
+        SessionTrace replayed = SessionReplayer.replay(
+                new SessionTrace(recorded.planId, events), StepGenerator.generateSteps(Exercise.load()));
+
+        assertFalse(SessionReplayer.diff(recorded, replayed).isEmpty());
+    }
+
+    @Test
+    public void replayTraceFile() throws IOException {
+        String path = System.getProperty(kTRACE_PROPERTY, "");
+        assumeFalse("No trace given", path.isEmpty());
+
+        SessionTrace recorded;
+        try (InputStream input = new FileInputStream(new File(path))) {
+            recorded = SessionTrace.read(input);
+        }
+
+        SessionTrace replayed = SessionReplayer.replay(recorded, StepGenerator.generateSteps(Exercise.load()));
+
+        assertEquals(new ArrayList<String>(), SessionReplayer.diff(recorded, replayed));
+    }
+
+    /**
+     * Record a session with jittery wakeups, a couple of pauses, a skip and a power level change
+     */
+    private static SessionTrace recordSession(Random random, PowerPolicy policy) throws IOException {
+        List<IStep> steps = StepGenerator.generateSteps(Exercise.load());
+
+        long[] lateness = new long[20_000];
+        for (int i = 0; i < lateness.length; i++) {
+            lateness[i] = random.nextInt(30);
+        }
+
+        VirtualScheduler clock = new VirtualScheduler();
+        ReplayScheduler scheduler = new ReplayScheduler(clock, lateness);
+        SessionProbe probe = new SessionProbe(null, false);
+
+        SessionTraceRecorder recorder = new SessionTraceRecorder(SessionTrace.planId(steps));
+
+        SessionEngine engine = new SessionEngine(steps, clock, scheduler, probe, probe);
+        engine.setPowerPolicy(policy);
+        engine.setTraceRecorder(recorder);
+
+        clock.moveTo(1_000_000);
+        engine.start();
+
+        // Pause during the warning beeps of the first rest
+        clock.advance(2_500);
+        engine.setPaused(true);
+        clock.advance(4_000);
+        engine.setPaused(false);
+
+        // Skip in the middle of a hold
+        clock.advance(10_050);
+        engine.skipAction();
+
+        // Device heats up, then cools down a bit later
+        clock.advance(3_333);
+        policy.setThermalStatus(PowerPolicy.kTHERMAL_STATUS_MODERATE);
+        clock.advance(20_000);
+        policy.setThermalStatus(PowerPolicy.kTHERMAL_STATUS_LIGHT);
+
+        // Pause right when a beep is due
+        clock.advance(11_000);
+        engine.setPaused(true);
+        clock.advance(1_234);
+        engine.setPaused(false);
+
+        clock.runUntilIdle();
+        assertTrue(probe.finished);
+
+        return read(recorder);
+    }
+
+    private static SessionTrace read(SessionTraceRecorder recorder) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        recorder.writeTo(output);
+
+        return SessionTrace.read(new ByteArrayInputStream(output.toByteArray()));
+    }
+
+    private static int count(SessionTrace trace, int type) {
+        int count = 0;
+        for (SessionTrace.Event event : trace.events) {
+            if (event.type == type) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+}
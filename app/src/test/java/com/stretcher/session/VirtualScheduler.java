@@ -0,0 +1,145 @@
+package com.stretcher.session;
+
+import java.util.Arrays;
+
+/**
+ * Virtual clock & scheduler, time only moves when asked to
+ * <p>
+ * Pending tasks are kept in plain arrays so that scheduling doesn't allocate, which keeps
+ * allocation measurements of the engine clean.
+ */
+class VirtualScheduler implements IClock, IScheduler {
+    /**
+     * Current virtual time
+     */
+    private long mNowMs = 0;
+
+    /**
+     * Pending tasks
+     */
+    private Runnable[] mTasks = new Runnable[8];
+
+    /**
+     * Times at which the pending tasks should run
+     */
+    private long[] mTimes = new long[8];
+
+    /**
+     * Number of pending tasks
+     */
+    private int mNumPending = 0;
+
+    /**
+     * Total number of scheduled tasks
+     */
+    int numScheduled = 0;
+
+    @Override
+    public long nowMs() {
+        return mNowMs;
+    }
+
+    @Override
+    public void schedule(Runnable task, long atMs) {
+        if (mNumPending == mTasks.length) {
+            mTasks = Arrays.copyOf(mTasks, mTasks.length * 2);
+            mTimes = Arrays.copyOf(mTimes, mTimes.length * 2);
+        }
+
+        mTasks[mNumPending] = task;
+        mTimes[mNumPending] = atMs;
+        mNumPending++;
+
+        numScheduled++;
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+        int kept = 0;
+
+        for (int i = 0; i < mNumPending; i++) {
+            if (mTasks[i] != task) {
+                mTasks[kept] = mTasks[i];
+                mTimes[kept] = mTimes[i];
+                kept++;
+            }
+        }
+
+        Arrays.fill(mTasks, kept, mNumPending, null);
+        mNumPending = kept;
+    }
+
+    boolean hasPending() {
+        return mNumPending > 0;
+    }
+
+    /**
+     * Run all tasks due until the given time, then move the clock to it
+     */
+    void runUntil(long targetMs) {
+        runDue(targetMs);
+
+        mNowMs = Math.max(mNowMs, targetMs);
+    }
+
+    /**
+     * Move the clock to the given time without running anything
+     */
+    void moveTo(long timeMs) {
+        mNowMs = Math.max(mNowMs, timeMs);
+    }
+
+    /**
+     * Advance the clock
+     */
+    void advance(long durationMs) {
+        runUntil(mNowMs + durationMs);
+    }
+
+    /**
+     * Run tasks until there's nothing pending
+     */
+    void runUntilIdle() {
+        runDue(Long.MAX_VALUE);
+    }
+
+    /**
+     * Run tasks due until the given time, in order of their time (then order of scheduling)
+     */
+    private void runDue(long targetMs) {
+        while (runNext(targetMs)) {
+        }
+    }
+
+    /**
+     * Run the next task, if it's due until the given time
+     *
+     * @return false if there was no task to run
+     */
+    boolean runNext(long targetMs) {
+        int next = -1;
+
+        for (int i = 0; i < mNumPending; i++) {
+            if (mTimes[i] <= targetMs && (next == -1 || mTimes[i] < mTimes[next])) {
+                next = i;
+            }
+        }
+
+        if (next == -1) {
+            return false;
+        }
+
+        Runnable task = mTasks[next];
+        mNowMs = Math.max(mNowMs, mTimes[next]);
+
+        // Remove before running, the task may reschedule itself
+        System.arraycopy(mTasks, next + 1, mTasks, next, mNumPending - next - 1);
+        System.arraycopy(mTimes, next + 1, mTimes, next, mNumPending - next - 1);
+        mNumPending--;
+        mTasks[mNumPending] = null;
+
+        task.run();
+
+        return true;
+    }
+}